@@ -17,8 +17,17 @@ dependencies {
 
     implementation("org.furyio:fury-core:0.3.1")
 
+    // 快照导入使用 COPY，驱动由 runner 在运行时提供
+    compileOnly("org.postgresql:postgresql")
+
     // You may add any utility library you want to use, such as guava.
     // ORM libraries are prohibited in this project.
+
+    testImplementation("org.springframework.boot:spring-boot-starter-test")
+}
+
+tasks.test {
+    useJUnitPlatform()
 }
 
 tasks.withType<BootRun> {
@@ -0,0 +1,507 @@
+package io.sustc.importer;
+
+import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.ReviewRecord;
+import io.sustc.dto.UserRecord;
+import lombok.Getter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * A read-only, memory-mapped snapshot of the import data, stored column by column,
+ * so that the rows can be streamed into the database without building any DTO.
+ * <pre>
+ * file      := MAGIC version:int32 users recipes reviews
+ * table     := rows:int32 column*            (columns in the order of the table classes below)
+ * long      := int64[rows]
+ * int       := int32[rows]
+ * float     := float32[rows]
+ * timestamp := int64[rows]                   (epoch millis, {@link Long#MIN_VALUE} for null)
+ * string    := nulls:bitmap[(rows + 7) / 8] offsets:int32[rows + 1] heap:utf8[offsets[rows]]
+ * strings   := offsets:int32[rows + 1] string(offsets[rows] items)
+ * longs     := offsets:int32[rows + 1] int64[offsets[rows]]
+ * </pre>
+ * All numbers are big-endian. The {@code strings} and {@code longs} columns are flattened
+ * lists (CSR layout): the items of row {@code i} are at {@code [offsets[i], offsets[i + 1])}.
+ * Since a single mapping is used, a snapshot file can't exceed 2 GB.
+ */
+@Getter
+public final class ColumnarSnapshot {
+
+    private static final byte[] MAGIC = "SUSTCSNP".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int VERSION = 1;
+
+    private static final long NULL_TIMESTAMP = Long.MIN_VALUE;
+
+    private final UserTable users;
+
+    private final RecipeTable recipes;
+
+    private final ReviewTable reviews;
+
+    private ColumnarSnapshot(ByteBuffer buffer) {
+        byte[] magic = new byte[MAGIC.length];
+        buffer.duplicate().position(0).get(magic);
+        if (!Arrays.equals(magic, MAGIC) || buffer.getInt(MAGIC.length) != VERSION) {
+            throw new IllegalArgumentException("Not a snapshot file of version " + VERSION);
+        }
+        Cursor cursor = new Cursor(buffer, MAGIC.length + Integer.BYTES);
+        this.users = new UserTable(cursor);
+        this.recipes = new RecipeTable(cursor);
+        this.reviews = new ReviewTable(cursor);
+    }
+
+    /**
+     * Maps a snapshot file into memory. The mapping stays valid until the snapshot is garbage collected.
+     */
+    public static ColumnarSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new ColumnarSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public static void write(Path file, List<UserRecord> users, List<RecipeRecord> recipes, List<ReviewRecord> reviews)
+            throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+
+            out.writeInt(users.size());
+            writeLongs(out, users, UserRecord::getAuthorId);
+            writeStrings(out, users, UserRecord::getAuthorName);
+            writeStrings(out, users, UserRecord::getGender);
+            writeInts(out, users, UserRecord::getAge);
+            writeStrings(out, users, UserRecord::getPassword);
+            writeLongLists(out, users, UserRecord::getFollowingUsers);
+
+            out.writeInt(recipes.size());
+            writeLongs(out, recipes, RecipeRecord::getRecipeId);
+            writeLongs(out, recipes, RecipeRecord::getAuthorId);
+            writeStrings(out, recipes, RecipeRecord::getName);
+            writeStrings(out, recipes, RecipeRecord::getDescription);
+            writeStrings(out, recipes, RecipeRecord::getRecipeCategory);
+            writeStrings(out, recipes, RecipeRecord::getCookTime);
+            writeStrings(out, recipes, RecipeRecord::getPrepTime);
+            writeTimestamps(out, recipes, RecipeRecord::getDatePublished);
+            writeFloats(out, recipes, RecipeRecord::getAggregatedRating);
+            writeInts(out, recipes, RecipeRecord::getReviewCount);
+            writeFloats(out, recipes, RecipeRecord::getCalories);
+            writeFloats(out, recipes, RecipeRecord::getFatContent);
+            writeFloats(out, recipes, RecipeRecord::getSaturatedFatContent);
+            writeFloats(out, recipes, RecipeRecord::getCholesterolContent);
+            writeFloats(out, recipes, RecipeRecord::getSodiumContent);
+            writeFloats(out, recipes, RecipeRecord::getCarbohydrateContent);
+            writeFloats(out, recipes, RecipeRecord::getFiberContent);
+            writeFloats(out, recipes, RecipeRecord::getSugarContent);
+            writeFloats(out, recipes, RecipeRecord::getProteinContent);
+            writeInts(out, recipes, RecipeRecord::getRecipeServings);
+            writeStrings(out, recipes, RecipeRecord::getRecipeYield);
+            writeStringLists(out, recipes, RecipeRecord::getRecipeIngredientParts);
+
+            out.writeInt(reviews.size());
+            writeLongs(out, reviews, ReviewRecord::getReviewId);
+            writeLongs(out, reviews, ReviewRecord::getRecipeId);
+            writeLongs(out, reviews, ReviewRecord::getAuthorId);
+            writeFloats(out, reviews, ReviewRecord::getRating);
+            writeStrings(out, reviews, ReviewRecord::getReview);
+            writeTimestamps(out, reviews, ReviewRecord::getDateSubmitted);
+            writeTimestamps(out, reviews, ReviewRecord::getDateModified);
+            writeLongLists(out, reviews, ReviewRecord::getLikes);
+        }
+    }
+
+    @Getter
+    public static final class UserTable {
+        private final int rows;
+        private final LongColumn id;
+        private final StringColumn name;
+        private final StringColumn gender;
+        private final IntColumn age;
+        private final StringColumn password;
+        private final LongListColumn following;
+
+        private UserTable(Cursor cursor) {
+            this.rows = cursor.nextInt();
+            this.id = new LongColumn(cursor, rows);
+            this.name = new StringColumn(cursor, rows);
+            this.gender = new StringColumn(cursor, rows);
+            this.age = new IntColumn(cursor, rows);
+            this.password = new StringColumn(cursor, rows);
+            this.following = new LongListColumn(cursor, rows);
+        }
+    }
+
+    @Getter
+    public static final class RecipeTable {
+        private final int rows;
+        private final LongColumn id;
+        private final LongColumn authorId;
+        private final StringColumn name;
+        private final StringColumn description;
+        private final StringColumn category;
+        private final StringColumn cookTime;
+        private final StringColumn prepTime;
+        private final TimestampColumn datePublished;
+        private final FloatColumn aggregatedRating;
+        private final IntColumn reviewCount;
+        private final FloatColumn calories;
+        private final FloatColumn fatContent;
+        private final FloatColumn saturatedFatContent;
+        private final FloatColumn cholesterolContent;
+        private final FloatColumn sodiumContent;
+        private final FloatColumn carbohydrateContent;
+        private final FloatColumn fiberContent;
+        private final FloatColumn sugarContent;
+        private final FloatColumn proteinContent;
+        private final IntColumn servings;
+        private final StringColumn yield;
+        private final StringListColumn ingredients;
+
+        private RecipeTable(Cursor cursor) {
+            this.rows = cursor.nextInt();
+            this.id = new LongColumn(cursor, rows);
+            this.authorId = new LongColumn(cursor, rows);
+            this.name = new StringColumn(cursor, rows);
+            this.description = new StringColumn(cursor, rows);
+            this.category = new StringColumn(cursor, rows);
+            this.cookTime = new StringColumn(cursor, rows);
+            this.prepTime = new StringColumn(cursor, rows);
+            this.datePublished = new TimestampColumn(cursor, rows);
+            this.aggregatedRating = new FloatColumn(cursor, rows);
+            this.reviewCount = new IntColumn(cursor, rows);
+            this.calories = new FloatColumn(cursor, rows);
+            this.fatContent = new FloatColumn(cursor, rows);
+            this.saturatedFatContent = new FloatColumn(cursor, rows);
+            this.cholesterolContent = new FloatColumn(cursor, rows);
+            this.sodiumContent = new FloatColumn(cursor, rows);
+            this.carbohydrateContent = new FloatColumn(cursor, rows);
+            this.fiberContent = new FloatColumn(cursor, rows);
+            this.sugarContent = new FloatColumn(cursor, rows);
+            this.proteinContent = new FloatColumn(cursor, rows);
+            this.servings = new IntColumn(cursor, rows);
+            this.yield = new StringColumn(cursor, rows);
+            this.ingredients = new StringListColumn(cursor, rows);
+        }
+    }
+
+    @Getter
+    public static final class ReviewTable {
+        private final int rows;
+        private final LongColumn id;
+        private final LongColumn recipeId;
+        private final LongColumn authorId;
+        private final FloatColumn rating;
+        private final StringColumn content;
+        private final TimestampColumn dateSubmitted;
+        private final TimestampColumn dateModified;
+        private final LongListColumn likes;
+
+        private ReviewTable(Cursor cursor) {
+            this.rows = cursor.nextInt();
+            this.id = new LongColumn(cursor, rows);
+            this.recipeId = new LongColumn(cursor, rows);
+            this.authorId = new LongColumn(cursor, rows);
+            this.rating = new FloatColumn(cursor, rows);
+            this.content = new StringColumn(cursor, rows);
+            this.dateSubmitted = new TimestampColumn(cursor, rows);
+            this.dateModified = new TimestampColumn(cursor, rows);
+            this.likes = new LongListColumn(cursor, rows);
+        }
+    }
+
+    public static final class LongColumn {
+        private final ByteBuffer buffer;
+        private final int base;
+
+        private LongColumn(Cursor cursor, int rows) {
+            this.buffer = cursor.buffer;
+            this.base = cursor.skip((long) rows * Long.BYTES);
+        }
+
+        public long get(int row) {
+            return buffer.getLong(base + row * Long.BYTES);
+        }
+    }
+
+    public static final class IntColumn {
+        private final ByteBuffer buffer;
+        private final int base;
+
+        private IntColumn(Cursor cursor, int rows) {
+            this.buffer = cursor.buffer;
+            this.base = cursor.skip((long) rows * Integer.BYTES);
+        }
+
+        public int get(int row) {
+            return buffer.getInt(base + row * Integer.BYTES);
+        }
+    }
+
+    public static final class FloatColumn {
+        private final ByteBuffer buffer;
+        private final int base;
+
+        private FloatColumn(Cursor cursor, int rows) {
+            this.buffer = cursor.buffer;
+            this.base = cursor.skip((long) rows * Float.BYTES);
+        }
+
+        public float get(int row) {
+            return buffer.getFloat(base + row * Float.BYTES);
+        }
+    }
+
+    public static final class TimestampColumn {
+        private final LongColumn millis;
+
+        private TimestampColumn(Cursor cursor, int rows) {
+            this.millis = new LongColumn(cursor, rows);
+        }
+
+        public Timestamp get(int row) {
+            long value = millis.get(row);
+            return value == NULL_TIMESTAMP ? null : new Timestamp(value);
+        }
+    }
+
+    public static final class StringColumn {
+        private final ByteBuffer buffer;
+        private final int nulls;
+        private final int offsets;
+        private final int heap;
+
+        private StringColumn(Cursor cursor, int rows) {
+            this.buffer = cursor.buffer;
+            this.nulls = cursor.skip((rows + 7) / 8);
+            this.offsets = cursor.skip((long) (rows + 1) * Integer.BYTES);
+            this.heap = cursor.skip(buffer.getInt(offsets + rows * Integer.BYTES));
+        }
+
+        public boolean isNull(int row) {
+            return (buffer.get(nulls + (row >>> 3)) & (1 << (row & 7))) != 0;
+        }
+
+        /**
+         * @return position of the UTF-8 bytes of a row in {@link #buffer()}
+         */
+        public int position(int row) {
+            return heap + buffer.getInt(offsets + row * Integer.BYTES);
+        }
+
+        /**
+         * @return number of UTF-8 bytes of a row
+         */
+        public int length(int row) {
+            return buffer.getInt(offsets + (row + 1) * Integer.BYTES) - buffer.getInt(offsets + row * Integer.BYTES);
+        }
+
+        /**
+         * The mapped file, to read the UTF-8 bytes of the rows without decoding them.
+         */
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        public String get(int row) {
+            if (isNull(row)) {
+                return null;
+            }
+            byte[] bytes = new byte[length(row)];
+            buffer.duplicate().position(position(row)).get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    public static final class StringListColumn {
+        private final ByteBuffer buffer;
+        private final int offsets;
+        @Getter
+        private final StringColumn items;
+
+        private StringListColumn(Cursor cursor, int rows) {
+            this.buffer = cursor.buffer;
+            this.offsets = cursor.skip((long) (rows + 1) * Integer.BYTES);
+            this.items = new StringColumn(cursor, buffer.getInt(offsets + rows * Integer.BYTES));
+        }
+
+        /**
+         * @return index in {@link #getItems()} of the first item of a row
+         */
+        public int start(int row) {
+            return buffer.getInt(offsets + row * Integer.BYTES);
+        }
+
+        /**
+         * @return index in {@link #getItems()} after the last item of a row
+         */
+        public int end(int row) {
+            return buffer.getInt(offsets + (row + 1) * Integer.BYTES);
+        }
+    }
+
+    public static final class LongListColumn {
+        private final ByteBuffer buffer;
+        private final int offsets;
+        private final int values;
+        private final int size;
+
+        private LongListColumn(Cursor cursor, int rows) {
+            this.buffer = cursor.buffer;
+            this.offsets = cursor.skip((long) (rows + 1) * Integer.BYTES);
+            this.size = buffer.getInt(offsets + rows * Integer.BYTES);
+            this.values = cursor.skip((long) size * Long.BYTES);
+        }
+
+        /**
+         * @return index of the first value of a row, for {@link #value(int)}
+         */
+        public int start(int row) {
+            return buffer.getInt(offsets + row * Integer.BYTES);
+        }
+
+        /**
+         * @return index after the last value of a row
+         */
+        public int end(int row) {
+            return buffer.getInt(offsets + (row + 1) * Integer.BYTES);
+        }
+
+        public long value(int index) {
+            return buffer.getLong(values + index * Long.BYTES);
+        }
+
+        /**
+         * @return total number of values of all rows
+         */
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Walks through the columns of a file while the tables are opened.
+     */
+    private static final class Cursor {
+        private final ByteBuffer buffer;
+        private int position;
+
+        private Cursor(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        private int nextInt() {
+            return buffer.getInt(skip(Integer.BYTES));
+        }
+
+        /**
+         * @return the position before skipping
+         */
+        private int skip(long bytes) {
+            long next = position + bytes;
+            if (next > buffer.limit()) {
+                throw new IllegalArgumentException("Truncated snapshot file");
+            }
+            int start = position;
+            position = (int) next;
+            return start;
+        }
+    }
+
+    private static <T> void writeLongs(DataOutputStream out, List<T> rows, ToLongFunction<T> getter) throws IOException {
+        for (T row : rows) {
+            out.writeLong(getter.applyAsLong(row));
+        }
+    }
+
+    private static <T> void writeInts(DataOutputStream out, List<T> rows, ToIntFunction<T> getter) throws IOException {
+        for (T row : rows) {
+            out.writeInt(getter.applyAsInt(row));
+        }
+    }
+
+    private static <T> void writeFloats(DataOutputStream out, List<T> rows, Function<T, Float> getter) throws IOException {
+        for (T row : rows) {
+            out.writeFloat(getter.apply(row));
+        }
+    }
+
+    private static <T> void writeTimestamps(DataOutputStream out, List<T> rows, Function<T, Timestamp> getter) throws IOException {
+        for (T row : rows) {
+            Timestamp value = getter.apply(row);
+            out.writeLong(value == null ? NULL_TIMESTAMP : value.getTime());
+        }
+    }
+
+    private static <T> void writeStrings(DataOutputStream out, List<T> rows, Function<T, String> getter) throws IOException {
+        byte[] nulls = new byte[(rows.size() + 7) / 8];
+        byte[][] values = new byte[rows.size()][];
+        for (int i = 0; i < rows.size(); i++) {
+            String value = getter.apply(rows.get(i));
+            if (value == null) {
+                nulls[i >>> 3] |= (byte) (1 << (i & 7));
+            } else {
+                values[i] = value.getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        out.write(nulls);
+        int offset = 0;
+        out.writeInt(offset);
+        for (byte[] value : values) {
+            offset += value == null ? 0 : value.length;
+            out.writeInt(offset);
+        }
+        for (byte[] value : values) {
+            if (value != null) {
+                out.write(value);
+            }
+        }
+    }
+
+    private static <T> void writeStringLists(DataOutputStream out, List<T> rows, Function<T, String[]> getter) throws IOException {
+        List<String> items = new ArrayList<>();
+        out.writeInt(0);
+        for (T row : rows) {
+            String[] values = getter.apply(row);
+            if (values != null) {
+                items.addAll(Arrays.asList(values));
+            }
+            out.writeInt(items.size());
+        }
+        writeStrings(out, items, Function.identity());
+    }
+
+    private static <T> void writeLongLists(DataOutputStream out, List<T> rows, Function<T, long[]> getter) throws IOException {
+        int offset = 0;
+        out.writeInt(offset);
+        for (T row : rows) {
+            long[] values = getter.apply(row);
+            offset += values == null ? 0 : values.length;
+            out.writeInt(offset);
+        }
+        for (T row : rows) {
+            long[] values = getter.apply(row);
+            if (values != null) {
+                for (long value : values) {
+                    out.writeLong(value);
+                }
+            }
+        }
+    }
+}
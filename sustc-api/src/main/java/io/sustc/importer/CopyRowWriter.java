@@ -0,0 +1,118 @@
+package io.sustc.importer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes rows in the text format of {@code COPY ... FROM STDIN}: tab-separated fields,
+ * one row per line, {@code \N} for null, with backslash, tab, newline and carriage return escaped.
+ * <p>
+ * String columns of a {@link ColumnarSnapshot} are copied straight from the mapped file;
+ * the escaped characters are all ASCII, so escaping byte by byte is safe for UTF-8.
+ */
+public class CopyRowWriter implements Closeable {
+
+    private final OutputStream out;
+
+    private boolean firstField = true;
+
+    public CopyRowWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public CopyRowWriter write(long value) throws IOException {
+        return writeAscii(Long.toString(value));
+    }
+
+    /**
+     * Writes the exact value of a float, which is what the server gets from
+     * {@code PreparedStatement#setFloat} on a double precision column.
+     */
+    public CopyRowWriter write(float value) throws IOException {
+        return writeAscii(Double.toString(value));
+    }
+
+    public CopyRowWriter write(boolean value) throws IOException {
+        return writeAscii(value ? "t" : "f");
+    }
+
+    public CopyRowWriter write(String value) throws IOException {
+        if (value == null) {
+            return writeNull();
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        separate();
+        for (byte b : bytes) {
+            escape(b);
+        }
+        return this;
+    }
+
+    public CopyRowWriter write(ColumnarSnapshot.StringColumn column, int row) throws IOException {
+        if (column.isNull(row)) {
+            return writeNull();
+        }
+        separate();
+        ByteBuffer buffer = column.buffer();
+        for (int i = column.position(row), end = i + column.length(row); i < end; i++) {
+            escape(buffer.get(i));
+        }
+        return this;
+    }
+
+    public CopyRowWriter writeNull() throws IOException {
+        return writeAscii("\\N");
+    }
+
+    public void endRow() throws IOException {
+        out.write('\n');
+        firstField = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private CopyRowWriter writeAscii(String value) throws IOException {
+        separate();
+        for (int i = 0; i < value.length(); i++) {
+            out.write(value.charAt(i));
+        }
+        return this;
+    }
+
+    private void separate() throws IOException {
+        if (!firstField) {
+            out.write('\t');
+        }
+        firstField = false;
+    }
+
+    private void escape(byte b) throws IOException {
+        switch (b) {
+            case '\\':
+                out.write('\\');
+                out.write('\\');
+                break;
+            case '\t':
+                out.write('\\');
+                out.write('t');
+                break;
+            case '\n':
+                out.write('\\');
+                out.write('n');
+                break;
+            case '\r':
+                out.write('\\');
+                out.write('r');
+                break;
+            default:
+                // PGCopyOutputStream rejects values outside 0..255
+                out.write(b & 0xFF);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package io.sustc.importer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * A growable list of {@code (source, target)} pairs of ids, stored as primitive longs.
+ * <p>
+ * Each edge takes 16 bytes, instead of the 32-byte {@code long[2]} plus the list slot it takes
+ * as a {@code List<long[]>}. The edges are kept either in two parallel {@code long[]} arrays,
+ * or off-heap in a direct buffer, which doesn't count against the heap at all.
+ */
+public abstract class EdgeBuffer {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    protected int size;
+
+    public static EdgeBuffer onHeap(int initialCapacity) {
+        return new OnHeap(initialCapacity);
+    }
+
+    /**
+     * Direct buffers are only freed when the buffer object is collected, so keep the buffer
+     * for as long as it is needed and no longer.
+     */
+    public static EdgeBuffer offHeap(int initialCapacity) {
+        return new OffHeap(initialCapacity);
+    }
+
+    public static EdgeBuffer allocate(int initialCapacity, boolean offHeap) {
+        return offHeap ? offHeap(initialCapacity) : onHeap(initialCapacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void add(long source, long target) {
+        if (size == capacity()) {
+            grow(newCapacity(size + 1));
+        }
+        set(size++, source, target);
+    }
+
+    /**
+     * Adds an edge from {@code source} to each of {@code targets}, which may be null.
+     */
+    public void addAll(long source, long[] targets) {
+        if (targets == null || targets.length == 0) {
+            return;
+        }
+        if (size + targets.length > capacity()) {
+            grow(newCapacity(size + targets.length));
+        }
+        for (long target : targets) {
+            set(size++, source, target);
+        }
+    }
+
+    public long source(int index) {
+        checkIndex(index);
+        return getSource(index);
+    }
+
+    public long target(int index) {
+        checkIndex(index);
+        return getTarget(index);
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public interface EdgePredicate {
+        boolean test(long source, long target);
+    }
+
+    /**
+     * Removes the edges not matching the predicate, keeping the others in order.
+     *
+     * @return the number of edges removed
+     */
+    public int retainIf(EdgePredicate predicate) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            long source = getSource(i);
+            long target = getTarget(i);
+            if (predicate.test(source, target)) {
+                set(kept++, source, target);
+            }
+        }
+        int removed = size - kept;
+        size = kept;
+        return removed;
+    }
+
+    /**
+     * Sorts the edges by source, then target, and removes the duplicates.
+     *
+     * @return the number of edges removed
+     */
+    public int sortAndDedup() {
+        if (size < 2) {
+            return 0;
+        }
+        if (isPackable()) {
+            sortPacked();
+        } else {
+            quickSort(0, size - 1);
+        }
+
+        int kept = 1;
+        for (int i = 1; i < size; i++) {
+            long source = getSource(i);
+            long target = getTarget(i);
+            if (source != getSource(kept - 1) || target != getTarget(kept - 1)) {
+                set(kept++, source, target);
+            }
+        }
+        int removed = size - kept;
+        size = kept;
+        return removed;
+    }
+
+    /**
+     * Whether each edge fits in a single long with the source in the high half,
+     * so that sorting the packed longs sorts the edges.
+     */
+    private boolean isPackable() {
+        for (int i = 0; i < size; i++) {
+            long source = getSource(i);
+            long target = getTarget(i);
+            if (source < 0 || source > Integer.MAX_VALUE || target < 0 || target > 0xFFFFFFFFL) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void sortPacked() {
+        long[] packed = new long[size];
+        for (int i = 0; i < size; i++) {
+            packed[i] = getSource(i) << 32 | getTarget(i);
+        }
+        Arrays.parallelSort(packed);
+        for (int i = 0; i < size; i++) {
+            set(i, packed[i] >>> 32, packed[i] & 0xFFFFFFFFL);
+        }
+    }
+
+    private void quickSort(int lo, int hi) {
+        while (hi - lo >= INSERTION_SORT_THRESHOLD) {
+            int mid = (lo + hi) >>> 1;
+            long pivotSource = getSource(mid);
+            long pivotTarget = getTarget(mid);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (compare(i, pivotSource, pivotTarget) < 0) {
+                    i++;
+                }
+                while (compare(j, pivotSource, pivotTarget) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            // 先递归较短的一侧，栈深度不超过 log n
+            if (j - lo < hi - i) {
+                quickSort(lo, j);
+                lo = i;
+            } else {
+                quickSort(i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && compare(j - 1, getSource(j), getTarget(j)) > 0; j--) {
+                swap(j - 1, j);
+            }
+        }
+    }
+
+    private int compare(int index, long source, long target) {
+        int cmp = Long.compare(getSource(index), source);
+        return cmp != 0 ? cmp : Long.compare(getTarget(index), target);
+    }
+
+    private void swap(int i, int j) {
+        long source = getSource(i);
+        long target = getTarget(i);
+        set(i, getSource(j), getTarget(j));
+        set(j, source, target);
+    }
+
+    /**
+     * @return the bytes taken by the edge storage, including the unused capacity
+     */
+    public long footprint() {
+        return 2L * Long.BYTES * capacity();
+    }
+
+    protected abstract int capacity();
+
+    protected abstract void grow(int capacity);
+
+    protected abstract void set(int index, long source, long target);
+
+    protected abstract long getSource(int index);
+
+    protected abstract long getTarget(int index);
+
+    private int newCapacity(int required) {
+        if (required < 0) {
+            throw new IllegalStateException("Too many edges");
+        }
+        // 按 1.5 倍扩容，与 ArrayList 相同
+        long grown = Math.max((long) capacity() + (capacity() >> 1), DEFAULT_CAPACITY);
+        return (int) Math.min(Math.max(grown, required), Integer.MAX_VALUE - 8);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    private static final class OnHeap extends EdgeBuffer {
+
+        private long[] sources;
+
+        private long[] targets;
+
+        private OnHeap(int initialCapacity) {
+            if (initialCapacity < 0) {
+                throw new IllegalArgumentException("Negative capacity: " + initialCapacity);
+            }
+            sources = new long[initialCapacity];
+            targets = new long[initialCapacity];
+        }
+
+        @Override
+        protected int capacity() {
+            return sources.length;
+        }
+
+        @Override
+        protected void grow(int capacity) {
+            long[] newSources = new long[capacity];
+            long[] newTargets = new long[capacity];
+            System.arraycopy(sources, 0, newSources, 0, size);
+            System.arraycopy(targets, 0, newTargets, 0, size);
+            sources = newSources;
+            targets = newTargets;
+        }
+
+        @Override
+        protected void set(int index, long source, long target) {
+            sources[index] = source;
+            targets[index] = target;
+        }
+
+        @Override
+        protected long getSource(int index) {
+            return sources[index];
+        }
+
+        @Override
+        protected long getTarget(int index) {
+            return targets[index];
+        }
+    }
+
+    /**
+     * Stores the edges interleaved, {@code source} at {@code 2 * index} and {@code target} right after it.
+     */
+    private static final class OffHeap extends EdgeBuffer {
+
+        /**
+         * A direct buffer is limited to {@code Integer.MAX_VALUE} bytes.
+         */
+        private static final int MAX_CAPACITY = Integer.MAX_VALUE / (2 * Long.BYTES);
+
+        private LongBuffer edges;
+
+        private OffHeap(int initialCapacity) {
+            if (initialCapacity < 0) {
+                throw new IllegalArgumentException("Negative capacity: " + initialCapacity);
+            }
+            edges = allocateDirect(initialCapacity);
+        }
+
+        private static LongBuffer allocateDirect(int capacity) {
+            if (capacity > MAX_CAPACITY) {
+                throw new IllegalStateException("Too many edges for an off-heap buffer: " + capacity);
+            }
+            return ByteBuffer.allocateDirect(capacity * 2 * Long.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asLongBuffer();
+        }
+
+        @Override
+        protected int capacity() {
+            return edges.capacity() / 2;
+        }
+
+        @Override
+        protected void grow(int capacity) {
+            LongBuffer grown = allocateDirect(Math.min(capacity, MAX_CAPACITY));
+            LongBuffer used = edges.duplicate();
+            used.position(0).limit(2 * size);
+            grown.put(used);
+            grown.clear();
+            edges = grown;
+        }
+
+        @Override
+        protected void set(int index, long source, long target) {
+            edges.put(2 * index, source);
+            edges.put(2 * index + 1, target);
+        }
+
+        @Override
+        protected long getSource(int index) {
+            return edges.get(2 * index);
+        }
+
+        @Override
+        protected long getTarget(int index) {
+            return edges.get(2 * index + 1);
+        }
+    }
+}
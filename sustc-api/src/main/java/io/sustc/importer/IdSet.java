@@ -0,0 +1,46 @@
+package io.sustc.importer;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A set of ids, kept as a bitmap for the ids in {@code [0, Integer.MAX_VALUE)}, which all ids
+ * of the sample data are. Other ids still work, they are just kept in a hash set.
+ */
+public class IdSet {
+
+    private final BitSet bits = new BitSet();
+
+    private final Set<Long> others = new HashSet<>();
+
+    private int size;
+
+    /**
+     * @return whether the id wasn't in the set yet
+     */
+    public boolean add(long id) {
+        if (id >= 0 && id < Integer.MAX_VALUE) {
+            int index = (int) id;
+            if (bits.get(index)) {
+                return false;
+            }
+            bits.set(index);
+        } else if (!others.add(id)) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    public boolean contains(long id) {
+        if (id >= 0 && id < Integer.MAX_VALUE) {
+            return bits.get((int) id);
+        }
+        return others.contains(id);
+    }
+
+    public int size() {
+        return size;
+    }
+}
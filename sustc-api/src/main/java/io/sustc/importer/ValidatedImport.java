@@ -0,0 +1,133 @@
+package io.sustc.importer;
+
+import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.ReviewRecord;
+import io.sustc.dto.UserRecord;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The import data after a validation pass, which can be loaded without any constraint violation:
+ * <ul>
+ *     <li>records with an id seen before are dropped, the first one wins;</li>
+ *     <li>recipes of unknown authors, and reviews of unknown recipes or authors, are dropped;</li>
+ *     <li>follows of unknown users or of oneself, and likes by unknown users, are dropped;</li>
+ *     <li>the follow and like pairs are sorted and deduplicated.</li>
+ * </ul>
+ * The ids are checked against {@link IdSet bitmaps} of the kept records.
+ */
+@Getter
+public class ValidatedImport {
+
+    private final List<UserRecord> users;
+
+    private final List<RecipeRecord> recipes;
+
+    private final List<ReviewRecord> reviews;
+
+    /**
+     * {@code (follower_id, followee_id)} pairs.
+     */
+    private final EdgeBuffer follows;
+
+    /**
+     * {@code (review_id, user_id)} pairs.
+     */
+    private final EdgeBuffer likes;
+
+    private int droppedUsers;
+
+    private int droppedRecipes;
+
+    private int droppedReviews;
+
+    private int droppedFollows;
+
+    private int droppedLikes;
+
+    private ValidatedImport(int userCnt, int recipeCnt, int reviewCnt, EdgeBuffer follows, EdgeBuffer likes) {
+        this.users = new ArrayList<>(userCnt);
+        this.recipes = new ArrayList<>(recipeCnt);
+        this.reviews = new ArrayList<>(reviewCnt);
+        this.follows = follows;
+        this.likes = likes;
+    }
+
+    /**
+     * @param offHeap whether the follow and like pairs are buffered off-heap
+     */
+    public static ValidatedImport of(List<UserRecord> userRecords, List<RecipeRecord> recipeRecords,
+                                     List<ReviewRecord> reviewRecords, boolean offHeap) {
+        List<UserRecord> userList = orEmpty(userRecords);
+        List<RecipeRecord> recipeList = orEmpty(recipeRecords);
+        List<ReviewRecord> reviewList = orEmpty(reviewRecords);
+
+        int followCnt = 0;
+        for (UserRecord user : userList) {
+            followCnt += user == null || user.getFollowingUsers() == null ? 0 : user.getFollowingUsers().length;
+        }
+        int likeCnt = 0;
+        for (ReviewRecord review : reviewList) {
+            likeCnt += review == null || review.getLikes() == null ? 0 : review.getLikes().length;
+        }
+        ValidatedImport data = new ValidatedImport(userList.size(), recipeList.size(), reviewList.size(),
+                EdgeBuffer.allocate(followCnt, offHeap), EdgeBuffer.allocate(likeCnt, offHeap));
+
+        IdSet userIds = new IdSet();
+        for (UserRecord user : userList) {
+            if (user != null && userIds.add(user.getAuthorId())) {
+                data.users.add(user);
+            }
+        }
+        data.droppedUsers = userList.size() - data.users.size();
+
+        IdSet recipeIds = new IdSet();
+        for (RecipeRecord recipe : recipeList) {
+            if (recipe != null && userIds.contains(recipe.getAuthorId()) && recipeIds.add(recipe.getRecipeId())) {
+                data.recipes.add(recipe);
+            }
+        }
+        data.droppedRecipes = recipeList.size() - data.recipes.size();
+
+        IdSet reviewIds = new IdSet();
+        for (ReviewRecord review : reviewList) {
+            if (review != null && recipeIds.contains(review.getRecipeId())
+                    && userIds.contains(review.getAuthorId()) && reviewIds.add(review.getReviewId())) {
+                data.reviews.add(review);
+            }
+        }
+        data.droppedReviews = reviewList.size() - data.reviews.size();
+
+        // 被丢弃记录的关系一并不计入
+        for (UserRecord user : data.users) {
+            data.follows.addAll(user.getAuthorId(), user.getFollowingUsers());
+        }
+        data.droppedFollows = followCnt - data.follows.size();
+        data.droppedFollows += data.follows.retainIf((follower, followee) ->
+                follower != followee && userIds.contains(followee));
+        data.droppedFollows += data.follows.sortAndDedup();
+
+        for (ReviewRecord review : data.reviews) {
+            data.likes.addAll(review.getReviewId(), review.getLikes());
+        }
+        data.droppedLikes = likeCnt - data.likes.size();
+        data.droppedLikes += data.likes.retainIf((review, user) -> userIds.contains(user));
+        data.droppedLikes += data.likes.sortAndDedup();
+
+        return data;
+    }
+
+    private static <T> List<T> orEmpty(List<T> records) {
+        return records == null ? new ArrayList<>() : records;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d users, %d recipes, %d reviews, %d follows, %d likes; dropped %d users, "
+                        + "%d recipes, %d reviews, %d follows, %d likes",
+                users.size(), recipes.size(), reviews.size(), follows.size(), likes.size(),
+                droppedUsers, droppedRecipes, droppedReviews, droppedFollows, droppedLikes);
+    }
+}
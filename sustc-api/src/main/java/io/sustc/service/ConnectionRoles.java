@@ -0,0 +1,28 @@
+package io.sustc.service;
+
+/**
+ * Names of the beans for the connections that are not used for the short OLTP calls, which use
+ * the primary {@code DataSource}, {@code JdbcTemplate} and transaction manager.
+ * <p>
+ * The imports use their own pool, and the global analytics another one, so that neither a bulk
+ * load nor a query running for minutes can take all the connections of the OLTP calls. Each
+ * pool gets the session settings of its workload.
+ * <p>
+ * The beans are required. A context with a single pool registers these names as aliases of its
+ * primary beans, so that the choice to share the pool is made where the pool is defined.
+ */
+public final class ConnectionRoles {
+
+    public static final String IMPORT_DATA_SOURCE = "importDataSource";
+
+    public static final String IMPORT_JDBC_TEMPLATE = "importJdbcTemplate";
+
+    public static final String IMPORT_TRANSACTION_MANAGER = "importTransactionManager";
+
+    public static final String ANALYTICS_DATA_SOURCE = "analyticsDataSource";
+
+    public static final String ANALYTICS_JDBC_TEMPLATE = "analyticsJdbcTemplate";
+
+    private ConnectionRoles() {
+    }
+}
@@ -4,7 +4,10 @@ import io.sustc.dto.ReviewRecord;
 import io.sustc.dto.UserRecord;
 import io.sustc.dto.RecipeRecord;
 
+import java.nio.file.Path;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public interface DatabaseService {
 
@@ -29,6 +32,69 @@ public interface DatabaseService {
             List<RecipeRecord> recipeRecords
     );
 
+    /**
+     * Imports the same data as {@link #importData}, committing every {@code chunkSize} rows of each table
+     * separately. The progress is recorded in the database, so if a previous call with the same data
+     * stopped midway, the import resumes after its last committed chunk instead of starting over.
+     *
+     * @param chunkSize rows per transaction
+     * @throws UnsupportedOperationException if the implementation only imports in one transaction
+     */
+    default void importDataResumable(
+            List<ReviewRecord> reviewRecords,
+            List<UserRecord> userRecords,
+            List<RecipeRecord> recipeRecords,
+            int chunkSize) {
+        throw new UnsupportedOperationException("Resumable import is not supported");
+    }
+
+    /**
+     * Replaces the data with the given one while the services stay available.
+     * The new data is loaded into unlogged tables of a staging schema, and swapped in
+     * with one short transaction once its constraints and indexes are built,
+     * so readers see the old data until then.
+     *
+     * @param logged whether the new tables are made logged before the swap,
+     *               otherwise they are emptied if the database crashes
+     * @throws UnsupportedOperationException if the implementation only imports to an empty database
+     */
+    default void reimportData(
+            List<ReviewRecord> reviewRecords,
+            List<UserRecord> userRecords,
+            List<RecipeRecord> recipeRecords,
+            boolean logged) {
+        throw new UnsupportedOperationException("Reimport is not supported");
+    }
+
+    /**
+     * Imports the same data as {@link #importData} from a {@link io.sustc.importer.ColumnarSnapshot}
+     * file to an empty database, without building the records in memory.
+     *
+     * @param snapshot path of the snapshot file
+     * @throws UnsupportedOperationException if the implementation only imports records
+     */
+    default void importSnapshot(Path snapshot) {
+        throw new UnsupportedOperationException("Snapshot import is not supported");
+    }
+
+    /**
+     * Counters of the optimizations of the implementation since it started, by name, such as the
+     * number of calls that shared the query of another call. The runner reports them; a counter
+     * only grows, and an optimization that is disabled has none.
+     *
+     * @return the counters, none by default
+     */
+    default Map<String, Long> getCounters() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Tells the implementation that the data changed without going through its services, such as
+     * when a test restores the tables, so that it drops whatever it keeps of the old data.
+     */
+    default void dataChanged() {
+    }
+
     /**
      * Delete all tables in the database.
      * <p>
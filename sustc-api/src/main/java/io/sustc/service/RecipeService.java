@@ -5,6 +5,7 @@ import io.sustc.dto.PageResult;
 import io.sustc.dto.RecipeRecord;
 import org.springframework.lang.Nullable;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -32,6 +33,46 @@ public interface RecipeService {
      */
     RecipeRecord getRecipeById(long recipeId);
 
+    /**
+     * Gets the names of several recipes, in one query if the implementation supports it,
+     * otherwise by calling {@link #getNameFromID} for each id.
+     *
+     * @param ids the recipe ids
+     * @return the name of each recipe, in the order of {@code ids},
+     *         with {@code null} for ids that no recipe has
+     * @throws IllegalArgumentException if {@code ids} is {@code null}
+     */
+    default List<String> getNamesByIds(long[] ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("Recipe IDs must not be null.");
+        }
+        List<String> names = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            names.add(getNameFromID(id));
+        }
+        return names;
+    }
+
+    /**
+     * Retrieves several recipes as {@link #getRecipeById} would one by one, in one query
+     * if the implementation supports it, otherwise by calling it for each id.
+     *
+     * @param ids the recipe ids
+     * @return the recipe of each id, in the order of {@code ids},
+     *         with {@code null} for ids that no active recipe has
+     * @throws IllegalArgumentException if {@code ids} is {@code null} or contains an id {@code <= 0}
+     */
+    default List<RecipeRecord> getRecipesByIds(long[] ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("Recipe IDs must not be null.");
+        }
+        List<RecipeRecord> recipes = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            recipes.add(getRecipeById(id));
+        }
+        return recipes;
+    }
+
 
     /**
      * Searches recipes based on multiple optional criteria, supporting pagination and sorting.
@@ -3,6 +3,7 @@ package io.sustc.service;
 import io.sustc.dto.*;
 import org.springframework.lang.Nullable;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -155,6 +156,31 @@ public interface UserService {
      */
     UserRecord getById(long userId);
 
+    /**
+     * Retrieves several users as {@link #getById} would one by one, in one query if the
+     * implementation supports it, otherwise by calling it for each id.
+     *
+     * @param userIds the user ids
+     * @return the user of each id, in the order of {@code userIds},
+     *         with {@code null} for ids that no user has
+     * @throws IllegalArgumentException if {@code userIds} is {@code null}
+     */
+    default List<UserRecord> getUsersByIds(long[] userIds) {
+        if (userIds == null) {
+            throw new IllegalArgumentException("User IDs must not be null.");
+        }
+        List<UserRecord> users = new ArrayList<>(userIds.length);
+        for (long userId : userIds) {
+            try {
+                users.add(getById(userId));
+            } catch (IllegalArgumentException e) {
+                // getById 对不存在的用户抛出异常，批量查询中以 null 表示
+                users.add(null);
+            }
+        }
+        return users;
+    }
+
 
     /**
      * Update profile information of a user (e.g., gender, age).
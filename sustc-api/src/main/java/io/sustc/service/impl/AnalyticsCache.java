@@ -0,0 +1,171 @@
+package io.sustc.service.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Caches the results of the global analytics, each tagged with the change counters of the
+ * tables it reads.
+ * <p>
+ * Disabled by default; with {@code sustc.service.analytics-cache=true} a call returns the cached
+ * result as long as none of its tables changed since the result was computed, and otherwise
+ * computes it again. The writes to these tables call {@link #changed} once they commit, and the
+ * imports call {@link #invalidateAll}.
+ * <p>
+ * The cached result is never handed out itself, each caller gets its own copy.
+ */
+@Component
+public class AnalyticsCache {
+
+    public static final String RECIPES = "recipes";
+
+    public static final String RECIPE_INGREDIENTS = "recipe_ingredients";
+
+    public static final String USERS = "users";
+
+    public static final String USER_FOLLOWS = "user_follows";
+
+    @Value("${sustc.service.analytics-cache:false}")
+    private boolean enabled;
+
+    private final ConcurrentHashMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns a copy of the cached result of {@code name}, or computes it if one of {@code tables}
+     * changed since it was cached.
+     *
+     * @param copy copies the result for a caller, so that the caller can't modify the cached one
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V get(String name, Supplier<V> query, UnaryOperator<V> copy, String... tables) {
+        if (!enabled) {
+            return query.get();
+        }
+        // 先读版本再查询：查询期间提交的写入会使版本变大，下次调用重新查询
+        long[] current = versionsOf(tables);
+        Entry cached = entries.get(name);
+        if (cached != null && Arrays.equals(cached.versions, current)) {
+            hits.increment();
+            return copy.apply((V) cached.value);
+        }
+        misses.increment();
+        V value = query.get();
+        Entry computed = new Entry(current, value);
+        entries.compute(name, (key, existing) -> existing != null && isNewer(existing.versions, current) ? existing : computed);
+        return copy.apply(value);
+    }
+
+    /**
+     * Marks the tables as changed, after the current transaction if there is one, since until
+     * it commits the analytics can't see its writes either.
+     */
+    public void changed(String... tables) {
+        if (enabled) {
+            Transactions.afterCompletion(() -> {
+                for (String table : tables) {
+                    version(table).incrementAndGet();
+                }
+            });
+        }
+    }
+
+    /**
+     * Marks every table as changed, for writes that bypass the services such as imports.
+     */
+    public void invalidateAll() {
+        if (enabled) {
+            Transactions.afterCompletion(() -> {
+                for (String table : new String[]{RECIPES, RECIPE_INGREDIENTS, USERS, USER_FOLLOWS}) {
+                    version(table).incrementAndGet();
+                }
+                entries.clear();
+            });
+        }
+    }
+
+    /**
+     * Number of calls answered from the cache.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of calls that computed their result.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public void resetCounters() {
+        hits.reset();
+        misses.reset();
+    }
+
+    /**
+     * The hits and misses for {@code DatabaseService#getCounters}, none when disabled.
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        if (enabled) {
+            counters.put("analyticsCache.hits", getHits());
+            counters.put("analyticsCache.misses", getMisses());
+        }
+        return counters;
+    }
+
+    private long[] versionsOf(String[] tables) {
+        long[] result = new long[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            result[i] = version(tables[i]).get();
+        }
+        return result;
+    }
+
+    private AtomicLong version(String table) {
+        return versions.computeIfAbsent(table, t -> new AtomicLong());
+    }
+
+    /**
+     * 版本只增不减，同一结果的表相同，任一分量更大即更新
+     */
+    private static boolean isNewer(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] > b[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Entry {
+
+        private final long[] versions;
+
+        private final Object value;
+
+        Entry(long[] versions, Object value) {
+            this.versions = versions;
+            this.value = value;
+        }
+    }
+}
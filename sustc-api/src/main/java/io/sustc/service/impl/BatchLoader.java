@@ -0,0 +1,176 @@
+package io.sustc.service.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Collapses concurrent single-id lookups into batch lookups.
+ * <p>
+ * A caller that finds no batch running runs one right away with whatever ids are queued,
+ * so a lone caller pays no extra delay. Callers arriving while a batch runs queue their ids,
+ * and when the batch ends one of them runs the next batch with all the ids queued meanwhile.
+ * The more callers, the larger the batches, and the fewer round trips per lookup.
+ * <p>
+ * Callers of the same id in one batch get the same value. If the batch function throws,
+ * every caller in that batch gets the exception.
+ *
+ * @param <V> the value type, {@code null} for ids that are not found
+ */
+class BatchLoader<V> {
+
+    /**
+     * Loads the values of the given ids, without the ids that are not found.
+     */
+    private final Function<long[], Map<Long, V>> batchFunction;
+
+    private final int maxBatchSize;
+
+    private final ArrayDeque<Request<V>> queue = new ArrayDeque<>();
+
+    private boolean running;
+
+    BatchLoader(Function<long[], Map<Long, V>> batchFunction, int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchFunction = batchFunction;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    V load(long id) {
+        Request<V> request = new Request<>(id);
+        boolean lead;
+        synchronized (this) {
+            queue.add(request);
+            lead = !running;
+            running = true;
+        }
+        if (!lead && !request.awaitTurn()) {
+            return request.get();
+        }
+
+        // 轮到本线程执行批量查询，直到自己的查询完成，再把执行权交给下一个排队的线程
+        while (true) {
+            List<Request<V>> batch = new ArrayList<>();
+            synchronized (this) {
+                while (!queue.isEmpty() && batch.size() < maxBatchSize) {
+                    batch.add(queue.poll());
+                }
+            }
+            run(batch);
+            synchronized (this) {
+                if (queue.isEmpty()) {
+                    running = false;
+                    break;
+                }
+                if (request.isDone()) {
+                    queue.peek().lead();
+                    break;
+                }
+            }
+        }
+        return request.get();
+    }
+
+    private void run(List<Request<V>> batch) {
+        long[] ids = new long[batch.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = batch.get(i).id;
+        }
+        Map<Long, V> values;
+        try {
+            values = batchFunction.apply(ids);
+        } catch (RuntimeException | Error e) {
+            for (Request<V> request : batch) {
+                request.fail(e);
+            }
+            return;
+        }
+        for (Request<V> request : batch) {
+            request.complete(values.get(request.id));
+        }
+    }
+
+    /**
+     * The values of the ids in the order of {@code ids}, {@code null} for the ids not in {@code values}.
+     */
+    static <V> List<V> inOrder(long[] ids, Map<Long, V> values) {
+        List<V> result = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            result.add(values.get(id));
+        }
+        return result;
+    }
+
+    private static class Request<V> {
+
+        private final long id;
+
+        private V value;
+
+        private Throwable error;
+
+        private boolean done;
+
+        private boolean leading;
+
+        Request(long id) {
+            this.id = id;
+        }
+
+        /**
+         * Waits until the request is done, or until it is this request's turn to run a batch.
+         *
+         * @return whether it is this request's turn
+         */
+        synchronized boolean awaitTurn() {
+            boolean interrupted = false;
+            while (!done && !leading) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // 其他请求依赖本请求继续执行批量查询，不能放弃等待
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return !done;
+        }
+
+        synchronized boolean isDone() {
+            return done;
+        }
+
+        synchronized void lead() {
+            leading = true;
+            notifyAll();
+        }
+
+        synchronized void complete(V value) {
+            this.value = value;
+            done = true;
+            notifyAll();
+        }
+
+        synchronized void fail(Throwable error) {
+            this.error = error;
+            done = true;
+            notifyAll();
+        }
+
+        synchronized V get() {
+            if (error instanceof RuntimeException) {
+                throw (RuntimeException) error;
+            }
+            if (error instanceof Error) {
+                throw (Error) error;
+            }
+            return value;
+        }
+    }
+}
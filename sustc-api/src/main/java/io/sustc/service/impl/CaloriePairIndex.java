@@ -0,0 +1,245 @@
+package io.sustc.service.impl;
+
+import io.sustc.service.ConnectionRoles;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the recipes ordered by calories in memory, so that the closest calorie pair is found
+ * without comparing every pair of recipes.
+ * <p>
+ * Disabled by default; with {@code sustc.service.calorie-index=true}
+ * {@code getClosestCaloriePair} is answered from here. The recipes are kept in a sorted set of
+ * (calories rounded to 2 places, id), and the gaps between neighbours in a min-heap, so adding
+ * or removing a recipe costs O(log n). Gaps are not removed from the heap when a recipe
+ * between them is added, they are skipped when they reach the top and are no longer between
+ * neighbours.
+ * <p>
+ * The index starts cold and is loaded from the database by the first call. Imports and
+ * {@code DatabaseService#dataChanged} make it cold again, since the tables were written directly.
+ */
+@Component
+public class CaloriePairIndex {
+
+    /**
+     * 与 SQL 中的 ORDER BY diff, r1.id, r2.id 相同：差值最小且 ID 最小的一对
+     */
+    private static final Comparator<Gap> GAP_ORDER = Comparator.comparing((Gap gap) -> gap.diff)
+            .thenComparingLong(Gap::firstId)
+            .thenComparingLong(Gap::secondId);
+
+    @Autowired
+    @Qualifier(ConnectionRoles.ANALYTICS_JDBC_TEMPLATE)
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${sustc.service.calorie-index:false}")
+    private boolean enabled;
+
+    private boolean loaded;
+
+    private final Map<Long, Entry> byId = new HashMap<>();
+
+    private final TreeSet<Entry> sorted = new TreeSet<>();
+
+    private final PriorityQueue<Gap> gaps = new PriorityQueue<>(GAP_ORDER);
+
+    private final LongAdder calls = new LongAdder();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The closest calorie pair in the same form as {@code getClosestCaloriePair}, or {@code null}
+     * if there are less than two recipes with calories.
+     */
+    public synchronized Map<String, Object> closestPair() {
+        calls.increment();
+        if (!loaded) {
+            load();
+        }
+        while (!gaps.isEmpty() && !isCurrent(gaps.peek())) {
+            gaps.poll();
+        }
+        Gap gap = gaps.peek();
+        if (gap == null) {
+            return null;
+        }
+        Entry a = gap.lower.id < gap.higher.id ? gap.lower : gap.higher;
+        Entry b = a == gap.lower ? gap.higher : gap.lower;
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("RecipeA", a.id);
+        map.put("RecipeB", b.id);
+        map.put("CaloriesA", round(a.calories));
+        map.put("CaloriesB", round(b.calories));
+        map.put("Difference", round(gap.diff));
+        return map;
+    }
+
+    /**
+     * Adds a recipe once it is committed.
+     *
+     * @param calories the calories rounded to 2 places as by the database, {@code null} if unknown
+     */
+    public void added(long id, BigDecimal calories) {
+        if (enabled && calories != null) {
+            Transactions.afterCommit(() -> add(id, calories));
+        }
+    }
+
+    /**
+     * Removes a recipe once its deletion is committed.
+     */
+    public void removed(long id) {
+        if (enabled) {
+            Transactions.afterCommit(() -> remove(id));
+        }
+    }
+
+    /**
+     * Makes the index cold, so that the next call loads it again.
+     */
+    public void reset() {
+        if (enabled) {
+            Transactions.afterCompletion(this::clear);
+        }
+    }
+
+    /**
+     * The calls answered from the index for {@code DatabaseService#getCounters}, none when disabled.
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        if (enabled) {
+            counters.put("caloriePairIndex.calls", calls.sum());
+        }
+        return counters;
+    }
+
+    private synchronized void load() {
+        clear();
+        // 与统计查询相同的取整，保证比较的是同样的值
+        jdbcTemplate.query("SELECT id, ROUND(CAST(calories AS NUMERIC), 2) AS calories FROM recipes " +
+                        "WHERE is_deleted = FALSE AND calories IS NOT NULL ORDER BY calories, id",
+                rs -> {
+                    Entry entry = new Entry(rs.getLong("id"), rs.getBigDecimal("calories"));
+                    Entry previous = sorted.isEmpty() ? null : sorted.last();
+                    byId.put(entry.id, entry);
+                    sorted.add(entry);
+                    if (previous != null) {
+                        gaps.add(new Gap(previous, entry));
+                    }
+                });
+        loaded = true;
+    }
+
+    private synchronized void add(long id, BigDecimal calories) {
+        // 冷启动时加载会读到已提交的数据；重复提交的通知不重复添加
+        if (!loaded || byId.containsKey(id)) {
+            return;
+        }
+        Entry entry = new Entry(id, calories);
+        byId.put(id, entry);
+        sorted.add(entry);
+        Entry lower = sorted.lower(entry);
+        Entry higher = sorted.higher(entry);
+        if (lower != null) {
+            gaps.add(new Gap(lower, entry));
+        }
+        if (higher != null) {
+            gaps.add(new Gap(entry, higher));
+        }
+    }
+
+    private synchronized void remove(long id) {
+        if (!loaded) {
+            return;
+        }
+        Entry entry = byId.remove(id);
+        if (entry == null) {
+            return;
+        }
+        sorted.remove(entry);
+        Entry lower = sorted.lower(entry);
+        Entry higher = sorted.higher(entry);
+        if (lower != null && higher != null) {
+            gaps.add(new Gap(lower, higher));
+        }
+    }
+
+    private synchronized void clear() {
+        byId.clear();
+        sorted.clear();
+        gaps.clear();
+        loaded = false;
+    }
+
+    /**
+     * Whether both ends of the gap are still in the index and still neighbours.
+     */
+    private boolean isCurrent(Gap gap) {
+        return byId.get(gap.lower.id) == gap.lower && byId.get(gap.higher.id) == gap.higher
+                && sorted.higher(gap.lower) == gap.higher;
+    }
+
+    /**
+     * 与 SQL 返回后的格式化相同，保留 1 位小数
+     */
+    private static double round(BigDecimal value) {
+        return BigDecimal.valueOf(value.doubleValue()).setScale(1, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    private static class Entry implements Comparable<Entry> {
+
+        private final long id;
+
+        private final BigDecimal calories;
+
+        Entry(long id, BigDecimal calories) {
+            this.id = id;
+            this.calories = calories;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int c = calories.compareTo(other.calories);
+            return c != 0 ? c : Long.compare(id, other.id);
+        }
+    }
+
+    private static class Gap {
+
+        private final Entry lower;
+
+        private final Entry higher;
+
+        private final BigDecimal diff;
+
+        Gap(Entry lower, Entry higher) {
+            this.lower = lower;
+            this.higher = higher;
+            this.diff = higher.calories.subtract(lower.calories);
+        }
+
+        long firstId() {
+            return Math.min(lower.id, higher.id);
+        }
+
+        long secondId() {
+            return Math.max(lower.id, higher.id);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.PageResult;
+import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.ReviewRecord;
+import org.springframework.beans.BeanUtils;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Copies of the results handed to several callers, such as the result of a shared query, so that
+ * a caller modifying its result doesn't change the result of the others. Each accepts {@code null}.
+ */
+final class Copies {
+
+    private Copies() {
+    }
+
+    static RecipeRecord recipe(RecipeRecord recipe) {
+        if (recipe == null) {
+            return null;
+        }
+        RecipeRecord copy = new RecipeRecord();
+        BeanUtils.copyProperties(recipe, copy);
+        // 数组和时间戳是可变的，不能共用
+        copy.setRecipeIngredientParts(recipe.getRecipeIngredientParts() == null
+                ? null : recipe.getRecipeIngredientParts().clone());
+        copy.setDatePublished(timestamp(recipe.getDatePublished()));
+        return copy;
+    }
+
+    static ReviewRecord review(ReviewRecord review) {
+        if (review == null) {
+            return null;
+        }
+        ReviewRecord copy = new ReviewRecord();
+        BeanUtils.copyProperties(review, copy);
+        copy.setLikes(review.getLikes() == null ? null : review.getLikes().clone());
+        copy.setDateSubmitted(timestamp(review.getDateSubmitted()));
+        copy.setDateModified(timestamp(review.getDateModified()));
+        return copy;
+    }
+
+    static PageResult<ReviewRecord> reviewPage(PageResult<ReviewRecord> page) {
+        if (page == null) {
+            return null;
+        }
+        ArrayList<ReviewRecord> items = null;
+        if (page.getItems() != null) {
+            items = new ArrayList<>(page.getItems().size());
+            for (ReviewRecord review : page.getItems()) {
+                items.add(review(review));
+            }
+        }
+        return new PageResult<>(items, page.getPage(), page.getSize(), page.getTotal());
+    }
+
+    /**
+     * A copy of a map whose values are immutable, such as the rows of the analytics.
+     */
+    static Map<String, Object> row(Map<String, Object> row) {
+        return row == null ? null : new LinkedHashMap<>(row);
+    }
+
+    static List<Map<String, Object>> rows(List<Map<String, Object>> rows) {
+        if (rows == null) {
+            return null;
+        }
+        List<Map<String, Object>> copy = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            copy.add(row(row));
+        }
+        return copy;
+    }
+
+    private static Timestamp timestamp(Timestamp timestamp) {
+        return timestamp == null ? null : (Timestamp) timestamp.clone();
+    }
+}
@@ -3,15 +3,19 @@ package io.sustc.service.impl;
 import io.sustc.dto.AuthInfo;
 import io.sustc.dto.PageResult;
 import io.sustc.dto.RecipeRecord;
+import io.sustc.service.ConnectionRoles;
 import io.sustc.service.RecipeService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
@@ -22,11 +26,46 @@ import java.util.*;
 @Slf4j
 public class RecipeServiceImpl implements RecipeService {
 
+    /**
+     * 合并并发的单个查询时，一次批量查询的最多 ID 数
+     */
+    private static final int MAX_BATCH_SIZE = 500;
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    /**
+     * Connections for the global analytics, which may run for minutes.
+     */
+    @Autowired
+    @Qualifier(ConnectionRoles.ANALYTICS_JDBC_TEMPLATE)
+    private JdbcTemplate analyticsJdbcTemplate;
+
+    @Autowired
+    private SingleFlights singleFlights;
+
+    @Autowired
+    private AnalyticsCache analyticsCache;
+
+    @Autowired
+    private CaloriePairIndex caloriePairIndex;
+
+    /**
+     * Whether concurrent {@link #getNameFromID} and {@link #getRecipeById} calls are collapsed
+     * into batch queries.
+     */
+    @Value("${sustc.service.collapse-lookups:false}")
+    private boolean collapseLookups;
+
+    private final BatchLoader<String> nameLoader = new BatchLoader<>(this::loadNames, MAX_BATCH_SIZE);
+
+    private final BatchLoader<RecipeRecord> recipeLoader = new BatchLoader<>(this::loadRecipes, MAX_BATCH_SIZE);
+
     @Override
     public String getNameFromID(long id) {
+        if (collapseLookups) {
+            return nameLoader.load(id);
+        }
         String sql = "SELECT name FROM recipes WHERE id = ?";
         try {
             return jdbcTemplate.queryForObject(sql, String.class, id);
@@ -40,6 +79,13 @@ public class RecipeServiceImpl implements RecipeService {
         if (recipeId <= 0) {
             throw new IllegalArgumentException("Recipe ID must be positive.");
         }
+        return singleFlights.execute(SingleFlights.RECIPE, recipeId, () -> queryRecipe(recipeId), Copies::recipe);
+    }
+
+    private RecipeRecord queryRecipe(long recipeId) {
+        if (collapseLookups) {
+            return recipeLoader.load(recipeId);
+        }
 
          String sql = "SELECT * FROM recipes WHERE id = ? AND is_deleted = FALSE";
 
@@ -55,37 +101,87 @@ public class RecipeServiceImpl implements RecipeService {
         }
     }
 
+    @Override
+    public List<String> getNamesByIds(long[] ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("Recipe IDs must not be null.");
+        }
+        return BatchLoader.inOrder(ids, loadNames(ids));
+    }
+
+    @Override
+    public List<RecipeRecord> getRecipesByIds(long[] ids) {
+        if (ids == null) {
+            throw new IllegalArgumentException("Recipe IDs must not be null.");
+        }
+        for (long id : ids) {
+            if (id <= 0) {
+                throw new IllegalArgumentException("Recipe ID must be positive.");
+            }
+        }
+        return BatchLoader.inOrder(ids, loadRecipes(ids));
+    }
+
+    private Map<Long, String> loadNames(long[] ids) {
+        Map<Long, String> names = new HashMap<>();
+        if (ids.length > 0) {
+            jdbcTemplate.query("SELECT id, name FROM recipes WHERE id = ANY(?)",
+                    rs -> {
+                        names.put(rs.getLong("id"), rs.getString("name"));
+                    }, (Object) ids);
+        }
+        return names;
+    }
+
+    private Map<Long, RecipeRecord> loadRecipes(long[] ids) {
+        Map<Long, RecipeRecord> recipes = new HashMap<>();
+        if (ids.length > 0) {
+            RecipeRowMapper mapper = new RecipeRowMapper();
+            jdbcTemplate.query("SELECT * FROM recipes WHERE id = ANY(?) AND is_deleted = FALSE",
+                    rs -> {
+                        RecipeRecord record = mapper.mapRow(rs, 0);
+                        calculateTotalTime(record);
+                        recipes.put(record.getRecipeId(), record);
+                    }, (Object) ids);
+        }
+        return recipes;
+    }
+
     @Override
     public PageResult<RecipeRecord> searchRecipes(String keyword, String category, Double minRating, Integer page, Integer size, String sort) {
         if (page < 1 || size <= 0) {
             throw new IllegalArgumentException("Invalid page or size.");
         }
 
-        StringBuilder sqlBuilder = new StringBuilder(
-                "SELECT r.*, u.name as author_name FROM recipes r JOIN users u ON r.author_id = u.id WHERE r.is_deleted = FALSE ");
+        // 条件必须原样写成 is_deleted = FALSE，才能匹配部分索引的谓词
+        StringBuilder whereBuilder = new StringBuilder("WHERE r.is_deleted = FALSE ");
         List<Object> params = new ArrayList<>();
 
         if (keyword != null && !keyword.isEmpty()) {
-            sqlBuilder.append("AND (r.name ILIKE ? OR r.description ILIKE ?) ");
+            whereBuilder.append("AND (r.name ILIKE ? OR r.description ILIKE ?) ");
             String likePattern = "%" + keyword + "%";
             params.add(likePattern);
             params.add(likePattern);
         }
 
         if (category != null && !category.isEmpty()) {
-            sqlBuilder.append("AND r.category = ? ");
+            whereBuilder.append("AND r.category = ? ");
             params.add(category);
         }
 
         if (minRating != null) {
-            sqlBuilder.append("AND r.aggregated_rating >= ? ");
+            whereBuilder.append("AND r.aggregated_rating >= ? ");
             params.add(minRating);
         }
 
-        String countSql = "SELECT COUNT(*) FROM (" + sqlBuilder.toString() + ") AS temp";
+        // 外键保证作者一定存在，计数不需要连接 users，可以只扫描索引
+        String countSql = "SELECT COUNT(*) FROM recipes r " + whereBuilder;
         Long total = jdbcTemplate.queryForObject(countSql, Long.class, params.toArray());
         if (total == null) total = 0L;
 
+        StringBuilder sqlBuilder = new StringBuilder(
+                "SELECT r.*, u.name as author_name FROM recipes r JOIN users u ON r.author_id = u.id ").append(whereBuilder);
+
         if (sort != null) {
             switch (sort) {
                 case "rating_desc":
@@ -140,12 +236,14 @@ public class RecipeServiceImpl implements RecipeService {
                 "calories, fat_content, saturated_fat_content, cholesterol_content, sodium_content, " +
                 "carbohydrate_content, fiber_content, sugar_content, protein_content, " +
                 "servings, yield, is_deleted) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+                // 按统计查询的方式取整，CaloriePairIndex 中的值与 SQL 计算的一致
+                "RETURNING ROUND(CAST(calories AS NUMERIC), 2)";
 
         int cookSec = parseDuration(dto.getCookTime());
         int prepSec = parseDuration(dto.getPrepTime());
 
-        jdbcTemplate.update(sql,
+        BigDecimal calories = jdbcTemplate.queryForObject(sql, BigDecimal.class,
                 newId,
                 auth.getAuthorId(),
                 dto.getName(),
@@ -169,6 +267,10 @@ public class RecipeServiceImpl implements RecipeService {
             }
         }
 
+        // 创建前对这个 ID 的查询结果为 null
+        singleFlights.forget(SingleFlights.RECIPE, newId);
+        analyticsCache.changed(AnalyticsCache.RECIPES, AnalyticsCache.RECIPE_INGREDIENTS);
+        caloriePairIndex.added(newId, calories);
         return newId;
     }
 
@@ -188,6 +290,9 @@ public class RecipeServiceImpl implements RecipeService {
         }
 
         jdbcTemplate.update("UPDATE recipes SET is_deleted = TRUE WHERE id = ?", recipeId);
+        singleFlights.forget(SingleFlights.RECIPE, recipeId);
+        analyticsCache.changed(AnalyticsCache.RECIPES);
+        caloriePairIndex.removed(recipeId);
     }
 
     @Override
@@ -230,11 +335,19 @@ public class RecipeServiceImpl implements RecipeService {
             updateSql.append(" WHERE id = ?");
             params.add(recipeId);
             jdbcTemplate.update(updateSql.toString(), params.toArray());
+            singleFlights.forget(SingleFlights.RECIPE, recipeId);
+            // 统计分析不读取烹饪和准备时间，不需要使缓存失效
         }
     }
 
     @Override
     public Map<String, Object> getClosestCaloriePair() {
+        return analyticsCache.get("getClosestCaloriePair",
+                caloriePairIndex.isEnabled() ? caloriePairIndex::closestPair : this::queryClosestCaloriePair,
+                Copies::row, AnalyticsCache.RECIPES);
+    }
+
+    private Map<String, Object> queryClosestCaloriePair() {
         String sql = "SELECT r1.id as id1, r2.id as id2, " +
                      "ROUND(CAST(r1.calories AS NUMERIC), 2) as cal1, " + 
                      "ROUND(CAST(r2.calories AS NUMERIC), 2) as cal2, " +
@@ -247,7 +360,7 @@ public class RecipeServiceImpl implements RecipeService {
                      "LIMIT 1";
 
         try {
-            return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
+            return analyticsJdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
                 Map<String, Object> map = new LinkedHashMap<>();
                 map.put("RecipeA", rs.getLong("id1"));
                 map.put("RecipeB", rs.getLong("id2"));
@@ -269,6 +382,11 @@ public class RecipeServiceImpl implements RecipeService {
 
     @Override
     public List<Map<String, Object>> getTop3MostComplexRecipesByIngredients() {
+        return analyticsCache.get("getTop3MostComplexRecipesByIngredients", this::queryTop3MostComplexRecipes,
+                Copies::rows, AnalyticsCache.RECIPES, AnalyticsCache.RECIPE_INGREDIENTS);
+    }
+
+    private List<Map<String, Object>> queryTop3MostComplexRecipes() {
         // 使用 COUNT(DISTINCT ri.name) 进行去重统计
         String sql = "SELECT r.id, r.name, COUNT(DISTINCT ri.name) as cnt " +
                      "FROM recipes r " +
@@ -278,7 +396,7 @@ public class RecipeServiceImpl implements RecipeService {
                      "ORDER BY cnt DESC, r.id ASC " +
                      "LIMIT 3";
 
-        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+        return analyticsJdbcTemplate.query(sql, (rs, rowNum) -> {
             Map<String, Object> map = new LinkedHashMap<>();
             map.put("RecipeId", rs.getLong("id"));
             map.put("Name", rs.getString("name"));
@@ -311,7 +429,7 @@ public class RecipeServiceImpl implements RecipeService {
     }
 
 
-    private int parseDuration(String iso) {
+    int parseDuration(String iso) {
         if (iso == null) return 0;
         try {
             return (int) Duration.parse(iso).getSeconds();
@@ -330,7 +448,7 @@ public class RecipeServiceImpl implements RecipeService {
         }
     }
 
-    private void calculateTotalTime(RecipeRecord record) {
+    void calculateTotalTime(RecipeRecord record) {
         try {
             // 处理空字符串和 null，默认为 PT0S (0秒)
             String cookStr = (record.getCookTime() == null || record.getCookTime().isEmpty()) ? "PT0S" : record.getCookTime();
@@ -345,7 +463,7 @@ public class RecipeServiceImpl implements RecipeService {
         }
     }
 
-    private static class RecipeRowMapper implements RowMapper<RecipeRecord> {
+    static class RecipeRowMapper implements RowMapper<RecipeRecord> {
         @Override
         public RecipeRecord mapRow(ResultSet rs, int rowNum) throws SQLException {
             RecipeRecord r = new RecipeRecord();
@@ -18,6 +18,7 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.time.Duration;
 
@@ -28,6 +29,9 @@ public class ReviewServiceImpl implements ReviewService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private SingleFlights singleFlights;
+
     /**
      * 验证认证信息：用户存在且未删除
      */
@@ -104,6 +108,8 @@ public class ReviewServiceImpl implements ReviewService {
                 "review_count = (SELECT COUNT(*) FROM reviews WHERE recipe_id = ?) " +
                 "WHERE id = ?";
         jdbcTemplate.update(sql, recipeId, recipeId, recipeId);
+        singleFlights.forget(SingleFlights.RECIPE, recipeId);
+        singleFlights.forgetAll(SingleFlights.REVIEW_PAGE);
     }
 
     @Override
@@ -165,54 +171,78 @@ public class ReviewServiceImpl implements ReviewService {
     }
 
     @Override
-    @Transactional
     public long likeReview(AuthInfo auth, long reviewId) {
-        checkAuth(auth);
+        if (auth == null) {
+            throw new SecurityException("Auth info is null.");
+        }
 
-        // 获取评论作者ID并验证评论存在
-        String checkSql = "SELECT author_id FROM reviews WHERE id = ?";
-        Long reviewAuthorId;
-        try {
-            reviewAuthorId = jdbcTemplate.queryForObject(checkSql, Long.class, reviewId);
-            if (reviewAuthorId == null) {
+        // 一条语句完成认证、检查评论存在和不是自己的评论、插入点赞（忽略重复）并返回点赞数
+        // 语句内的计数看不到本语句插入的行，需加上插入的行数
+        String sql = "WITH p AS (SELECT ?::bigint AS review_id, ?::bigint AS user_id), " +
+                "auth AS (SELECT u.is_deleted FROM users u JOIN p ON u.id = p.user_id), " +
+                "review AS (SELECT r.author_id FROM reviews r JOIN p ON r.id = p.review_id), " +
+                "added AS (INSERT INTO review_likes (review_id, user_id) SELECT p.review_id, p.user_id FROM p " +
+                "WHERE EXISTS (SELECT 1 FROM auth WHERE is_deleted = FALSE) " +
+                "AND EXISTS (SELECT 1 FROM review WHERE author_id <> p.user_id) " +
+                "ON CONFLICT DO NOTHING RETURNING 1) " +
+                "SELECT (SELECT is_deleted FROM auth) AS auth_deleted, " +
+                "(SELECT author_id FROM review) AS author_id, " +
+                "(SELECT COUNT(*) FROM review_likes WHERE review_id = (SELECT review_id FROM p)) " +
+                "+ (SELECT COUNT(*) FROM added) AS likes";
+        long likes = jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
+            checkAuthDeleted((Boolean) rs.getObject("auth_deleted"));
+            long authorId = rs.getLong("author_id");
+            if (rs.wasNull()) {
                 throw new IllegalArgumentException("Review not found.");
             }
-        } catch (EmptyResultDataAccessException e) {
-            throw new IllegalArgumentException("Review not found.");
-        }
-
-        // 不能点赞自己的评论
-        if (reviewAuthorId == auth.getAuthorId()) {
-            throw new SecurityException("Cannot like your own review.");
-        }
-
-        // 插入点赞（忽略重复）
-        String sql = "INSERT INTO review_likes (review_id, user_id) VALUES (?, ?) ON CONFLICT DO NOTHING";
-        jdbcTemplate.update(sql, reviewId, auth.getAuthorId());
-
-        String countSql = "SELECT COUNT(*) FROM review_likes WHERE review_id = ?";
-        return jdbcTemplate.queryForObject(countSql, Long.class, reviewId);
+            // 不能点赞自己的评论
+            if (authorId == auth.getAuthorId()) {
+                throw new SecurityException("Cannot like your own review.");
+            }
+            return rs.getLong("likes");
+        }, reviewId, auth.getAuthorId());
+        // 点赞列表和按点赞数的排序都可能改变
+        singleFlights.forgetAll(SingleFlights.REVIEW_PAGE);
+        return likes;
     }
 
     @Override
-    @Transactional
     public long unlikeReview(AuthInfo auth, long reviewId) {
-        checkAuth(auth);
-
-        // 验证评论存在
-        String checkSql = "SELECT 1 FROM reviews WHERE id = ?";
-        try {
-            jdbcTemplate.queryForObject(checkSql, Integer.class, reviewId);
-        } catch (EmptyResultDataAccessException e) {
-            throw new IllegalArgumentException("Review not found.");
+        if (auth == null) {
+            throw new SecurityException("Auth info is null.");
         }
 
-        // 删除点赞（如果不存在则无操作）
-        String sql = "DELETE FROM review_likes WHERE review_id = ? AND user_id = ?";
-        jdbcTemplate.update(sql, reviewId, auth.getAuthorId());
+        // 一条语句完成认证、检查评论存在、删除点赞（如果不存在则无操作）并返回点赞数
+        String sql = "WITH p AS (SELECT ?::bigint AS review_id, ?::bigint AS user_id), " +
+                "auth AS (SELECT u.is_deleted FROM users u JOIN p ON u.id = p.user_id), " +
+                "review AS (SELECT r.id FROM reviews r JOIN p ON r.id = p.review_id), " +
+                "removed AS (DELETE FROM review_likes rl USING p " +
+                "WHERE rl.review_id = p.review_id AND rl.user_id = p.user_id " +
+                "AND EXISTS (SELECT 1 FROM auth WHERE is_deleted = FALSE) " +
+                "AND EXISTS (SELECT 1 FROM review) RETURNING 1) " +
+                "SELECT (SELECT is_deleted FROM auth) AS auth_deleted, " +
+                "EXISTS (SELECT 1 FROM review) AS review_exists, " +
+                "(SELECT COUNT(*) FROM review_likes WHERE review_id = (SELECT review_id FROM p)) " +
+                "- (SELECT COUNT(*) FROM removed) AS likes";
+        long likes = jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
+            checkAuthDeleted((Boolean) rs.getObject("auth_deleted"));
+            if (!rs.getBoolean("review_exists")) {
+                throw new IllegalArgumentException("Review not found.");
+            }
+            return rs.getLong("likes");
+        }, reviewId, auth.getAuthorId());
+        // 点赞列表和按点赞数的排序都可能改变
+        singleFlights.forgetAll(SingleFlights.REVIEW_PAGE);
+        return likes;
+    }
 
-        String countSql = "SELECT COUNT(*) FROM review_likes WHERE review_id = ?";
-        return jdbcTemplate.queryForObject(countSql, Long.class, reviewId);
+    /**
+     * 根据语句查出的操作用户 is_deleted 验证认证信息，用户不存在时为 null
+     */
+    private static void checkAuthDeleted(Boolean isDeleted) {
+        if (isDeleted == null || isDeleted) {
+            throw new SecurityException("User is deleted or does not exist.");
+        }
     }
 
     @Override
@@ -220,7 +250,11 @@ public class ReviewServiceImpl implements ReviewService {
         if (page < 1 || size <= 0) {
             throw new IllegalArgumentException("Invalid page or size.");
         }
+        return singleFlights.execute(SingleFlights.REVIEW_PAGE, Arrays.asList(recipeId, page, size, sort),
+                () -> queryReviewPage(recipeId, page, size, sort), Copies::reviewPage);
+    }
 
+    private PageResult<ReviewRecord> queryReviewPage(long recipeId, int page, int size, String sort) {
         checkRecipeExists(recipeId);
 
         StringBuilder sqlBuilder = new StringBuilder(
@@ -303,7 +337,7 @@ public class ReviewServiceImpl implements ReviewService {
     /**
      * RowMapper for ReviewRecord
      */
-    private static class ReviewRowMapper implements RowMapper<ReviewRecord> {
+    static class ReviewRowMapper implements RowMapper<ReviewRecord> {
         @Override
         public ReviewRecord mapRow(ResultSet rs, int rowNum) throws SQLException {
             ReviewRecord r = new ReviewRecord();
@@ -0,0 +1,97 @@
+package io.sustc.service.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Shares one in-flight call among concurrent callers with the same key: the first caller runs
+ * the query, and the callers arriving while it runs wait for it and get its result, or its
+ * exception. A key is only shared while its query runs, nothing is cached afterwards.
+ * <p>
+ * The result of the query is kept private: every caller, the one that ran the query included,
+ * gets its own copy, made by the function given with the query, so that none of them sees
+ * what another one does to its result.
+ * {@link #forget} makes later callers run a new query instead of joining the running one,
+ * for when the running one may have missed a write.
+ */
+public class SingleFlight {
+
+    private final String name;
+
+    private final ConcurrentHashMap<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder calls = new LongAdder();
+
+    private final LongAdder coalesced = new LongAdder();
+
+    public SingleFlight(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <V> V execute(Object key, Supplier<V> query, UnaryOperator<V> copy) {
+        calls.increment();
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            coalesced.increment();
+            try {
+                return copy.apply((V) running.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            V value = query.get();
+            own.complete(value);
+            // 等待者可能仍在复制这个值，调用者也只拿副本
+            return copy.apply(value);
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    public void forget(Object key) {
+        inFlight.remove(key);
+    }
+
+    public void forgetAll() {
+        inFlight.clear();
+    }
+
+    /**
+     * Number of calls, including the coalesced ones.
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * Number of calls that shared the query of another call.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public void resetCounters() {
+        calls.reset();
+        coalesced.reset();
+    }
+}
@@ -0,0 +1,95 @@
+package io.sustc.service.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * The {@link SingleFlight} groups of the hot read paths of the services, by name.
+ * <p>
+ * Disabled by default; with {@code sustc.service.single-flight=true} concurrent identical
+ * calls of {@code getRecipeById}, {@code listByRecipe} and {@code getUserWithHighestFollowRatio}
+ * share one query. The writes that change what these return forget the affected keys,
+ * so a call made after a write returns never gets the result of a query started before it.
+ * The calls joining a query get a copy of its result.
+ */
+@Component
+public class SingleFlights {
+
+    public static final String RECIPE = "getRecipeById";
+
+    public static final String REVIEW_PAGE = "listByRecipe";
+
+    public static final String FOLLOW_RATIO = "getUserWithHighestFollowRatio";
+
+    @Value("${sustc.service.single-flight:false}")
+    private boolean enabled;
+
+    private final ConcurrentHashMap<String, SingleFlight> groups = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param copy copies the result for each call that joins the query of another one
+     */
+    public <V> V execute(String group, Object key, Supplier<V> query, UnaryOperator<V> copy) {
+        if (!enabled) {
+            return query.get();
+        }
+        return group(group).execute(key, query, copy);
+    }
+
+    /**
+     * Forgets the running query of the key, after the current transaction if there is one,
+     * since until it commits a new query can't see its writes either.
+     */
+    public void forget(String group, Object key) {
+        if (enabled) {
+            Transactions.afterCompletion(() -> group(group).forget(key));
+        }
+    }
+
+    public void forgetAll(String group) {
+        if (enabled) {
+            Transactions.afterCompletion(() -> group(group).forgetAll());
+        }
+    }
+
+    /**
+     * The groups used so far.
+     */
+    public List<SingleFlight> getGroups() {
+        return new ArrayList<>(groups.values());
+    }
+
+    /**
+     * The calls and coalesced calls of each group used so far, and the coalesced calls of all
+     * groups as {@code singleFlight.coalesced}, or nothing if disabled.
+     */
+    public Map<String, Long> getCounters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        if (enabled) {
+            long coalesced = 0;
+            for (SingleFlight group : getGroups()) {
+                counters.put("singleFlight." + group.getName() + ".calls", group.getCalls());
+                counters.put("singleFlight." + group.getName() + ".coalesced", group.getCoalesced());
+                coalesced += group.getCoalesced();
+            }
+            counters.put("singleFlight.coalesced", coalesced);
+        }
+        return counters;
+    }
+
+    private SingleFlight group(String name) {
+        return groups.computeIfAbsent(name, SingleFlight::new);
+    }
+}
@@ -1,9 +1,13 @@
 package io.sustc.service.impl;
 
 import io.sustc.dto.*;
+import io.sustc.service.ConnectionRoles;
 import io.sustc.service.UserService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
@@ -23,9 +27,40 @@ import java.util.Map;
 @Slf4j
 public class UserServiceImpl implements UserService {
 
+    /**
+     * 语句因并发的语句违反唯一约束时的最多尝试次数
+     */
+    private static final int MAX_ATTEMPTS = 10;
+
+    /**
+     * 合并并发的单个查询时，一次批量查询的最多 ID 数
+     */
+    private static final int MAX_BATCH_SIZE = 500;
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    /**
+     * Connections for {@link #getUserWithHighestFollowRatio}, which reads all the follows.
+     */
+    @Autowired
+    @Qualifier(ConnectionRoles.ANALYTICS_JDBC_TEMPLATE)
+    private JdbcTemplate analyticsJdbcTemplate;
+
+    @Autowired
+    private SingleFlights singleFlights;
+
+    @Autowired
+    private AnalyticsCache analyticsCache;
+
+    /**
+     * Whether concurrent {@link #getById} calls are collapsed into batch queries.
+     */
+    @Value("${sustc.service.collapse-lookups:false}")
+    private boolean collapseLookups;
+
+    private final BatchLoader<UserRecord> userLoader = new BatchLoader<>(this::loadUsers, MAX_BATCH_SIZE);
+
     /**
      * 验证认证信息：用户存在且未删除
      */
@@ -54,20 +89,7 @@ public class UserServiceImpl implements UserService {
         }
     }
 
-    /**
-     * 验证用户是否存在
-     */
-    private void checkUserExists(long userId) {
-        String sql = "SELECT 1 FROM users WHERE id = ?";
-        try {
-            jdbcTemplate.queryForObject(sql, Integer.class, userId);
-        } catch (EmptyResultDataAccessException e) {
-            throw new IllegalArgumentException("User not found.");
-        }
-    }
-
     @Override
-    @Transactional
     public long register(RegisterUserReq req) {
         // 验证必填字段
         if (req.getName() == null || req.getName().trim().isEmpty()) {
@@ -101,22 +123,19 @@ public class UserServiceImpl implements UserService {
             return -1;
         }
 
-        // 检查用户名是否已存在
-        String checkSql = "SELECT COUNT(*) FROM users WHERE name = ?";
-        Integer count = jdbcTemplate.queryForObject(checkSql, Integer.class, req.getName());
-        if (count != null && count > 0) {
+        // 一条语句完成查重、生成新用户ID和插入（密码需要哈希存储，这里为了兼容测试数据使用明文）
+        // ID 取自 users.id 的序列，并发注册不会冲突；只有通过查重的行才取序列值，依次注册时 ID 连续
+        // 并发注册同一用户名时都通过了查重，由唯一索引拦下后到的，不插入也不返回行
+        String sql = "INSERT INTO users (name, password, gender, age, is_deleted) " +
+                "SELECT ?, ?, ?, ?, FALSE WHERE NOT EXISTS (SELECT 1 FROM users WHERE name = ?) " +
+                "ON CONFLICT (name, name_rank) DO NOTHING RETURNING id";
+        List<Long> ids = jdbcTemplate.queryForList(sql, Long.class,
+                req.getName(), req.getPassword(), genderStr, age, req.getName());
+        if (ids.isEmpty()) {
             return -1; // 用户名已存在
         }
-
-        // 生成新用户ID
-        Long newId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) + 1 FROM users", Long.class);
-
-        // 插入用户（密码需要哈希存储，这里为了兼容测试数据使用明文）
-        String sql = "INSERT INTO users (id, name, password, gender, age, is_deleted) VALUES (?, ?, ?, ?, ?, ?)";
-        jdbcTemplate.update(sql, newId, req.getName(), req.getPassword(), genderStr, age, false);
-
-        log.info("User registered: id={}, name={}", newId, req.getName());
-        return newId;
+        log.info("User registered: id={}, name={}", ids.get(0), req.getName());
+        return ids.get(0);
     }
 
     /**
@@ -168,67 +187,98 @@ public class UserServiceImpl implements UserService {
     }
 
     @Override
-    @Transactional
     public boolean deleteAccount(AuthInfo auth, long userId) {
-        checkAuth(auth);
+        if (auth == null) {
+            throw new SecurityException("Auth info is null.");
+        }
         checkSelfOperation(auth, userId);
 
-        // 检查用户是否存在且未被删除
-        String checkSql = "SELECT is_deleted FROM users WHERE id = ?";
-        try {
-            Boolean isDeleted = jdbcTemplate.queryForObject(checkSql, Boolean.class, userId);
-            if (isDeleted == null) {
-                throw new IllegalArgumentException("User not found.");
+        // 一条语句完成软删除用户和清除关注关系（双向），两个方向分别走主键和 idx_follows_followee
+        // 只有本语句把用户从未删除改为已删除时才清除关注关系；was_deleted 为语句开始时的状态，用户不存在时为 null
+        String sql = "WITH deleted AS (UPDATE users SET is_deleted = TRUE " +
+                "WHERE id = ? AND is_deleted = FALSE RETURNING id), " +
+                "unfollowed AS (DELETE FROM user_follows " +
+                "WHERE (follower_id = ? OR followee_id = ?) AND EXISTS (SELECT 1 FROM deleted)) " +
+                "SELECT (SELECT is_deleted FROM users WHERE id = ?) AS was_deleted, " +
+                "EXISTS (SELECT 1 FROM deleted) AS deleted";
+        boolean deleted = jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
+            Boolean wasDeleted = (Boolean) rs.getObject("was_deleted");
+            if (wasDeleted == null) {
+                throw new SecurityException("User does not exist.");
             }
-            if (isDeleted) {
-                return false; // 已删除
+            if (wasDeleted) {
+                throw new SecurityException("User is deleted or does not exist.");
             }
-        } catch (EmptyResultDataAccessException e) {
-            throw new IllegalArgumentException("User not found.");
+            // 语句开始时未删除，但被并发的删除抢先，按已删除处理
+            return rs.getBoolean("deleted");
+        }, userId, userId, userId, userId);
+
+        if (deleted) {
+            log.info("User soft-deleted: id={}", userId);
+            singleFlights.forgetAll(SingleFlights.FOLLOW_RATIO);
+            analyticsCache.changed(AnalyticsCache.USERS, AnalyticsCache.USER_FOLLOWS);
         }
-
-        // 软删除用户
-        jdbcTemplate.update("UPDATE users SET is_deleted = TRUE WHERE id = ?", userId);
-
-        // 清除关注关系（双向）
-        jdbcTemplate.update("DELETE FROM user_follows WHERE follower_id = ?", userId);
-        jdbcTemplate.update("DELETE FROM user_follows WHERE followee_id = ?", userId);
-
-        log.info("User soft-deleted: id={}", userId);
-        return true;
+        return deleted;
     }
 
     @Override
-    @Transactional
     public boolean follow(AuthInfo auth, long followeeId) {
-        checkAuth(auth);
+        if (auth == null) {
+            throw new SecurityException("Auth info is null.");
+        }
 
         // 不能关注自己
         if (auth.getAuthorId() == followeeId) {
             throw new SecurityException("Cannot follow yourself.");
         }
 
-        // 检查目标用户是否存在
-        checkUserExists(followeeId);
-
-        // 检查是否已关注
-        String checkSql = "SELECT 1 FROM user_follows WHERE follower_id = ? AND followee_id = ?";
-        try {
-            jdbcTemplate.queryForObject(checkSql, Integer.class, auth.getAuthorId(), followeeId);
-            // 已关注，执行取消关注
-            jdbcTemplate.update("DELETE FROM user_follows WHERE follower_id = ? AND followee_id = ?",
-                    auth.getAuthorId(), followeeId);
-            return false; // 取消关注后状态为"未关注"
-        } catch (EmptyResultDataAccessException e) {
-            // 未关注，执行关注
-            jdbcTemplate.update("INSERT INTO user_follows (follower_id, followee_id) VALUES (?, ?)",
-                    auth.getAuthorId(), followeeId);
-            return true; // 关注成功
+        // 一条语句完成认证、检查目标用户是否存在和切换关注状态：已关注则删除，否则插入
+        // 认证或目标用户不通过时不修改数据，只返回检查结果
+        String sql = "WITH p AS (SELECT ?::bigint AS follower_id, ?::bigint AS followee_id), " +
+                "auth AS (SELECT u.is_deleted FROM users u JOIN p ON u.id = p.follower_id), " +
+                "target AS (SELECT u.id FROM users u JOIN p ON u.id = p.followee_id), " +
+                "ok AS (SELECT p.* FROM p WHERE EXISTS (SELECT 1 FROM auth WHERE is_deleted = FALSE) " +
+                "AND EXISTS (SELECT 1 FROM target)), " +
+                "removed AS (DELETE FROM user_follows uf USING ok " +
+                "WHERE uf.follower_id = ok.follower_id AND uf.followee_id = ok.followee_id RETURNING 1), " +
+                "added AS (INSERT INTO user_follows (follower_id, followee_id) " +
+                "SELECT follower_id, followee_id FROM ok WHERE NOT EXISTS (SELECT 1 FROM removed) RETURNING 1) " +
+                "SELECT (SELECT is_deleted FROM auth) AS auth_deleted, " +
+                "EXISTS (SELECT 1 FROM target) AS target_exists, " +
+                "EXISTS (SELECT 1 FROM added) AS following";
+        for (int attempt = 1; ; attempt++) {
+            try {
+                boolean following = jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
+                    Boolean isDeleted = (Boolean) rs.getObject("auth_deleted");
+                    if (isDeleted == null || isDeleted) {
+                        throw new SecurityException("User is deleted or does not exist.");
+                    }
+                    if (!rs.getBoolean("target_exists")) {
+                        throw new IllegalArgumentException("User not found.");
+                    }
+                    return rs.getBoolean("following"); // 关注成功为 true，取消关注后为 false
+                }, auth.getAuthorId(), followeeId);
+                singleFlights.forgetAll(SingleFlights.FOLLOW_RATIO);
+                analyticsCache.changed(AnalyticsCache.USER_FOLLOWS);
+                return following;
+            } catch (DuplicateKeyException e) {
+                // 并发的切换先插入了同一行，重新执行即取消关注，与依次执行的结果一致
+                if (attempt == MAX_ATTEMPTS) {
+                    throw e;
+                }
+            }
         }
     }
 
     @Override
     public UserRecord getById(long userId) {
+        if (collapseLookups) {
+            UserRecord user = userLoader.load(userId);
+            if (user == null) {
+                throw new IllegalArgumentException("User not found.");
+            }
+            return user;
+        }
         String sql = "SELECT id, name, gender, age, password, is_deleted FROM users WHERE id = ?";
         try {
             return jdbcTemplate.queryForObject(sql, new UserRowMapper(), userId);
@@ -237,6 +287,27 @@ public class UserServiceImpl implements UserService {
         }
     }
 
+    @Override
+    public List<UserRecord> getUsersByIds(long[] userIds) {
+        if (userIds == null) {
+            throw new IllegalArgumentException("User IDs must not be null.");
+        }
+        return BatchLoader.inOrder(userIds, loadUsers(userIds));
+    }
+
+    private Map<Long, UserRecord> loadUsers(long[] userIds) {
+        Map<Long, UserRecord> users = new HashMap<>();
+        if (userIds.length > 0) {
+            UserRowMapper mapper = new UserRowMapper();
+            jdbcTemplate.query("SELECT id, name, gender, age, password, is_deleted FROM users WHERE id = ANY(?)",
+                    rs -> {
+                        UserRecord user = mapper.mapRow(rs, 0);
+                        users.put(user.getAuthorId(), user);
+                    }, (Object) userIds);
+        }
+        return users;
+    }
+
     @Override
     @Transactional
     public void updateProfile(AuthInfo auth, String gender, Integer age) {
@@ -346,23 +417,32 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public Map<String, Object> getUserWithHighestFollowRatio() {
+        return analyticsCache.get(SingleFlights.FOLLOW_RATIO,
+                () -> singleFlights.execute(SingleFlights.FOLLOW_RATIO, SingleFlights.FOLLOW_RATIO, this::queryFollowRatio,
+                        Copies::row),
+                Copies::row, AnalyticsCache.USERS, AnalyticsCache.USER_FOLLOWS);
+    }
+
+    private Map<String, Object> queryFollowRatio() {
+        // 两个方向先各自按用户计数再连接，直接连接两次 user_follows 会产生 粉丝数 x 关注数 行
+        // (follower_id, followee_id) 是主键，COUNT(*) 即去重后的数量
         String sql = "SELECT " +
                 "u.id as author_id, " +
                 "u.name as author_name, " +
-                "COUNT(DISTINCT fl1.follower_id) as follower_count, " +
-                "COUNT(DISTINCT fl2.followee_id) as following_count " +
+                "COALESCE(fr.cnt, 0) as follower_count, " +
+                "fg.cnt as following_count " +
                 "FROM users u " +
-                "LEFT JOIN user_follows fl1 ON u.id = fl1.followee_id " +
-                "LEFT JOIN user_follows fl2 ON u.id = fl2.follower_id " +
+                "JOIN (SELECT follower_id, COUNT(*) as cnt FROM user_follows GROUP BY follower_id) fg " +  // FollowingCount > 0
+                "ON fg.follower_id = u.id " +
+                "LEFT JOIN (SELECT followee_id, COUNT(*) as cnt FROM user_follows GROUP BY followee_id) fr " +
+                "ON fr.followee_id = u.id " +
                 "WHERE u.is_deleted = FALSE " +
-                "GROUP BY u.id, u.name " +
-                "HAVING COUNT(DISTINCT fl2.followee_id) > 0 " +  // FollowingCount > 0
-                "ORDER BY (COUNT(DISTINCT fl1.follower_id) * 1.0 / COUNT(DISTINCT fl2.followee_id)) DESC, " +
+                "ORDER BY (COALESCE(fr.cnt, 0) * 1.0 / fg.cnt) DESC, " +
                 "u.id ASC " +
                 "LIMIT 1";
 
         try {
-            return jdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
+            return analyticsJdbcTemplate.queryForObject(sql, (rs, rowNum) -> {
                 Map<String, Object> map = new HashMap<>();
                 map.put("AuthorId", rs.getLong("author_id"));
                 map.put("AuthorName", rs.getString("author_name"));
@@ -380,7 +460,7 @@ public class UserServiceImpl implements UserService {
     /**
      * RowMapper for UserRecord
      */
-    private static class UserRowMapper implements RowMapper<UserRecord> {
+    static class UserRowMapper implements RowMapper<UserRecord> {
         @Override
         public UserRecord mapRow(ResultSet rs, int rowNum) throws SQLException {
             UserRecord user = new UserRecord();
@@ -0,0 +1,96 @@
+package io.sustc.importer;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EdgeBufferTest {
+
+    private static final Comparator<long[]> EDGE_ORDER = Comparator.<long[]>comparingLong(edge -> edge[0])
+            .thenComparingLong(edge -> edge[1]);
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void sortAndDedupPackedIds(boolean offHeap) {
+        // 非负且能装进一个 long 的 ID 走打包排序
+        assertSortedAndDeduplicated(offHeap, random -> random.nextInt(200), random -> (long) random.nextInt(200));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void sortAndDedupUnpackableIds(boolean offHeap) {
+        // 负数或超出 32 位的 ID 走快速排序
+        assertSortedAndDeduplicated(offHeap, random -> random.nextInt(200) - 100,
+                random -> (random.nextInt(200) - 100) * 0x100000000L);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void sortAndDedupSmallAndEmpty(boolean offHeap) {
+        EdgeBuffer edges = EdgeBuffer.allocate(0, offHeap);
+        assertEquals(0, edges.sortAndDedup());
+
+        edges.add(3, 4);
+        assertEquals(0, edges.sortAndDedup());
+        edges.add(3, 4);
+        assertEquals(1, edges.sortAndDedup());
+        assertArrayEquals(new long[][]{{3, 4}}, toArray(edges));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void growsAndRetainsInOrder(boolean offHeap) {
+        EdgeBuffer edges = EdgeBuffer.allocate(1, offHeap);
+        for (long i = 0; i < 3000; i++) {
+            edges.add(i, -i);
+        }
+        edges.addAll(-1, null);
+        edges.addAll(-1, new long[]{7, 8});
+        assertEquals(3002, edges.size());
+
+        assertEquals(1501, edges.retainIf((source, target) -> source % 2 == 0 || target == 8));
+        assertEquals(1501, edges.size());
+        assertEquals(2, edges.source(1));
+        assertEquals(-2, edges.target(1));
+        assertEquals(-1, edges.source(1500));
+        assertEquals(8, edges.target(1500));
+        assertThrows(IndexOutOfBoundsException.class, () -> edges.source(1501));
+    }
+
+    private interface IdGenerator {
+        long next(Random random);
+    }
+
+    private static void assertSortedAndDeduplicated(boolean offHeap, IdGenerator sources, IdGenerator targets) {
+        Random random = new Random(7);
+        EdgeBuffer edges = EdgeBuffer.allocate(16, offHeap);
+        TreeSet<long[]> expected = new TreeSet<>(EDGE_ORDER);
+        int added = 5000;
+        for (int i = 0; i < added; i++) {
+            long source = sources.next(random);
+            long target = targets.next(random);
+            edges.add(source, target);
+            expected.add(new long[]{source, target});
+        }
+
+        assertEquals(added - expected.size(), edges.sortAndDedup());
+        assertArrayEquals(expected.toArray(new long[0][]), toArray(edges));
+    }
+
+    private static long[][] toArray(EdgeBuffer edges) {
+        List<long[]> list = new ArrayList<>();
+        for (int i = 0; i < edges.size(); i++) {
+            list.add(new long[]{edges.source(i), edges.target(i)});
+        }
+        return list.toArray(new long[0][]);
+    }
+}
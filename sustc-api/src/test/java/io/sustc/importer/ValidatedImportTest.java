@@ -0,0 +1,94 @@
+package io.sustc.importer;
+
+import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.ReviewRecord;
+import io.sustc.dto.UserRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ValidatedImportTest {
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void dropsInvalidRecordsAndRelations(boolean offHeap) {
+        UserRecord first = user(1, "first", 2, 3, 1, 99, 2);
+        List<UserRecord> users = Arrays.asList(
+                first,
+                user(2, "u2", 1),
+                user(1, "duplicate", 2),
+                user(3, "u3", (long[]) null),
+                null);
+        List<RecipeRecord> recipes = Arrays.asList(
+                recipe(10, 1),
+                recipe(11, 99),
+                recipe(10, 2),
+                recipe(12, 3));
+        List<ReviewRecord> reviews = Arrays.asList(
+                review(100, 10, 2, 1, 3, 99, 1),
+                review(101, 11, 1, 2),
+                review(102, 12, 99),
+                review(100, 12, 3, 3),
+                review(103, 12, 1, (long[]) null));
+
+        ValidatedImport data = ValidatedImport.of(users, recipes, reviews, offHeap);
+
+        // 重复 ID 保留第一条
+        assertEquals(List.of(1L, 2L, 3L), data.getUsers().stream().map(UserRecord::getAuthorId).collect(Collectors.toList()));
+        assertSame(first, data.getUsers().get(0));
+        assertEquals(List.of(10L, 12L), data.getRecipes().stream().map(RecipeRecord::getRecipeId).collect(Collectors.toList()));
+        assertEquals(1L, data.getRecipes().get(0).getAuthorId());
+        assertEquals(List.of(100L, 103L), data.getReviews().stream().map(ReviewRecord::getReviewId).collect(Collectors.toList()));
+        assertEquals(10L, data.getReviews().get(0).getRecipeId());
+
+        // 关注自己、关注未知用户、重复关注，以及被丢弃用户的关注都不计入
+        assertArrayEquals(new long[][]{{1, 2}, {1, 3}, {2, 1}}, toArray(data.getFollows()));
+        assertArrayEquals(new long[][]{{100, 1}, {100, 3}}, toArray(data.getLikes()));
+
+        assertEquals(2, data.getDroppedUsers());
+        assertEquals(2, data.getDroppedRecipes());
+        assertEquals(3, data.getDroppedReviews());
+        assertEquals(4, data.getDroppedFollows());
+        assertEquals(4, data.getDroppedLikes());
+    }
+
+    @Test
+    void acceptsMissingLists() {
+        ValidatedImport data = ValidatedImport.of(null, null, null, false);
+
+        assertEquals(0, data.getUsers().size());
+        assertEquals(0, data.getRecipes().size());
+        assertEquals(0, data.getReviews().size());
+        assertEquals(0, data.getFollows().size());
+        assertEquals(0, data.getLikes().size());
+    }
+
+    private static UserRecord user(long id, String name, long... following) {
+        return UserRecord.builder().authorId(id).authorName(name).followingUsers(following).build();
+    }
+
+    private static RecipeRecord recipe(long id, long authorId) {
+        return RecipeRecord.builder().RecipeId(id).authorId(authorId).build();
+    }
+
+    private static ReviewRecord review(long id, long recipeId, long authorId, long... likes) {
+        return ReviewRecord.builder().reviewId(id).recipeId(recipeId).authorId(authorId).likes(likes).build();
+    }
+
+    private static long[][] toArray(EdgeBuffer edges) {
+        List<long[]> list = new ArrayList<>();
+        for (int i = 0; i < edges.size(); i++) {
+            list.add(new long[]{edges.source(i), edges.target(i)});
+        }
+        return list.toArray(new long[0][]);
+    }
+}
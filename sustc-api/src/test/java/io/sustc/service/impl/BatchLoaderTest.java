@@ -0,0 +1,166 @@
+package io.sustc.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchLoaderTest {
+
+    private static final int CALLERS = 20;
+
+    private final List<long[]> batches = new CopyOnWriteArrayList<>();
+
+    private final CountDownLatch firstBatch = new CountDownLatch(1);
+
+    @Test
+    void loneCallerRunsRightAway() {
+        BatchLoader<String> loader = new BatchLoader<>(recording(ids -> values(ids, 2)), 8);
+
+        assertEquals("v2", loader.load(2));
+        assertNull(loader.load(3));
+        assertEquals(2, batches.size());
+        assertArrayEquals(new long[]{2}, batches.get(0));
+        assertArrayEquals(new long[]{3}, batches.get(1));
+    }
+
+    @Test
+    void collapsesWaitingCallersIntoBatches() throws Exception {
+        BatchLoader<String> loader = new BatchLoader<>(recording(blockingFirst(ids -> values(ids, ids))), 8);
+
+        List<Future<String>> results = callConcurrently(loader);
+
+        for (int i = 0; i < CALLERS; i++) {
+            assertEquals("v" + i, results.get(i).get(10, TimeUnit.SECONDS));
+        }
+        // 第一个调用者单独执行，其余 19 个在它执行时排队，按每批最多 8 个执行
+        assertEquals(List.of(1, 8, 8, 3), batchSizes());
+        long[] loaded = batches.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        assertArrayEquals(LongStream.range(0, CALLERS).toArray(), loaded);
+    }
+
+    @Test
+    void failsEveryCallerOfTheFailedBatch() throws Exception {
+        IllegalStateException failure = new IllegalStateException("batch failed");
+        Function<long[], Map<Long, String>> failAfterFirst = ids -> {
+            if (ids[0] != 0) {
+                throw failure;
+            }
+            return values(ids, ids);
+        };
+        BatchLoader<String> loader = new BatchLoader<>(recording(blockingFirst(failAfterFirst)), CALLERS);
+
+        List<Future<String>> results = callConcurrently(loader);
+
+        assertEquals("v0", results.get(0).get(10, TimeUnit.SECONDS));
+        for (int i = 1; i < CALLERS; i++) {
+            ExecutionException e = assertThrows(ExecutionException.class, results.get(i)::get);
+            assertSame(failure, e.getCause());
+        }
+        assertEquals(List.of(1, CALLERS - 1), batchSizes());
+
+        // 失败后加载器仍可继续使用
+        assertEquals("v0", loader.load(0));
+    }
+
+    @Test
+    void rejectsNonPositiveBatchSize() {
+        assertThrows(IllegalArgumentException.class, () -> new BatchLoader<String>(ids -> Map.of(), 0));
+    }
+
+    /**
+     * The first caller loads id 0 and blocks in the batch function until the other callers,
+     * with ids 1 to {@code CALLERS - 1}, are all queued.
+     */
+    private List<Future<String>> callConcurrently(BatchLoader<String> loader) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> loader.load(0)));
+            while (batches.isEmpty()) {
+                Thread.sleep(1);
+            }
+            List<Thread> waiting = new CopyOnWriteArrayList<>();
+            for (int i = 1; i < CALLERS; i++) {
+                long id = i;
+                results.add(executor.submit(() -> {
+                    waiting.add(Thread.currentThread());
+                    return loader.load(id);
+                }));
+            }
+            // 排队的调用者都在 wait() 中后才放行第一批
+            while (waiting.size() < CALLERS - 1
+                    || !waiting.stream().allMatch(thread -> thread.getState() == Thread.State.WAITING)) {
+                Thread.sleep(1);
+            }
+            firstBatch.countDown();
+            return results;
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private Function<long[], Map<Long, String>> recording(Function<long[], Map<Long, String>> function) {
+        return ids -> {
+            batches.add(ids.clone());
+            return function.apply(ids);
+        };
+    }
+
+    private Function<long[], Map<Long, String>> blockingFirst(Function<long[], Map<Long, String>> function) {
+        return ids -> {
+            if (batches.size() == 1) {
+                try {
+                    firstBatch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+            return function.apply(ids);
+        };
+    }
+
+    private List<Integer> batchSizes() {
+        List<Integer> sizes = new ArrayList<>();
+        for (long[] batch : batches) {
+            sizes.add(batch.length);
+        }
+        return sizes;
+    }
+
+    /**
+     * Values {@code "v<id>"} of the requested ids that are among {@code found}.
+     */
+    private static Map<Long, String> values(long[] ids, long... found) {
+        Map<Long, String> values = new HashMap<>();
+        for (long id : ids) {
+            for (long f : found) {
+                if (id == f) {
+                    values.put(id, "v" + id);
+                }
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,161 @@
+package io.sustc.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CaloriePairIndexTest {
+
+    private final Map<Long, BigDecimal> recipes = new TreeMap<>();
+
+    private CaloriePairIndex index;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        // 加载时按卡路里和 ID 排序返回当前的菜谱，与 SQL 相同
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            List<Map.Entry<Long, BigDecimal>> rows = new ArrayList<>(recipes.entrySet());
+            rows.sort(Map.Entry.<Long, BigDecimal>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+            for (Map.Entry<Long, BigDecimal> row : rows) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getLong("id")).thenReturn(row.getKey());
+                when(rs.getBigDecimal("calories")).thenReturn(row.getValue());
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+
+        index = new CaloriePairIndex();
+        ReflectionTestUtils.setField(index, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(index, "enabled", true);
+    }
+
+    @Test
+    void matchesBruteForceUnderAddsAndRemoves() {
+        Random random = new Random(42);
+        long nextId = 1;
+        for (; nextId <= 50; nextId++) {
+            recipes.put(nextId, calories(random));
+        }
+        assertEquals(bruteForce(), index.closestPair());
+
+        for (int step = 0; step < 2000; step++) {
+            if (recipes.size() < 2 || random.nextBoolean()) {
+                // ID 不一定递增，覆盖新菜谱排在已有菜谱之间的情况
+                long id = random.nextBoolean() ? nextId++ : -nextId++;
+                BigDecimal calories = calories(random);
+                recipes.put(id, calories);
+                index.added(id, calories);
+            } else {
+                List<Long> ids = new ArrayList<>(recipes.keySet());
+                long id = ids.get(random.nextInt(ids.size()));
+                recipes.remove(id);
+                index.removed(id);
+            }
+            assertEquals(bruteForce(), index.closestPair(), "after step " + step);
+        }
+    }
+
+    @Test
+    void emptiesDownToNoPair() {
+        recipes.put(1L, new BigDecimal("10.00"));
+        recipes.put(2L, new BigDecimal("12.50"));
+        assertEquals(bruteForce(), index.closestPair());
+
+        recipes.remove(1L);
+        index.removed(1L);
+        assertNull(index.closestPair());
+
+        // 重复的删除通知不影响结果
+        index.removed(1L);
+        index.added(3L, new BigDecimal("12.50"));
+        recipes.put(3L, new BigDecimal("12.50"));
+        assertEquals(bruteForce(), index.closestPair());
+    }
+
+    @Test
+    void ignoresRolledBackAdds() {
+        recipes.put(1L, new BigDecimal("10.00"));
+        recipes.put(2L, new BigDecimal("20.00"));
+        Map<String, Object> before = index.closestPair();
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            index.added(3L, new BigDecimal("10.01"));
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, TransactionSynchronization.STATUS_ROLLED_BACK);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertEquals(before, index.closestPair());
+    }
+
+    /**
+     * 0 到 20 之间、两位小数的卡路里，范围小以便出现相同的值和相同的差值
+     */
+    private static BigDecimal calories(Random random) {
+        return BigDecimal.valueOf(random.nextInt(2001), 2);
+    }
+
+    /**
+     * 比较每一对菜谱，与 getClosestCaloriePair 的 SQL 相同：差值最小，再按两个 ID 排序
+     */
+    private Map<String, Object> bruteForce() {
+        List<Long> ids = new ArrayList<>(recipes.keySet());
+        long bestA = 0;
+        long bestB = 0;
+        BigDecimal bestDiff = null;
+        for (int i = 0; i < ids.size(); i++) {
+            for (int j = i + 1; j < ids.size(); j++) {
+                long a = ids.get(i);
+                long b = ids.get(j);
+                BigDecimal diff = recipes.get(a).subtract(recipes.get(b)).abs();
+                int c = bestDiff == null ? -1 : diff.compareTo(bestDiff);
+                if (c < 0 || c == 0 && (a < bestA || a == bestA && b < bestB)) {
+                    bestA = a;
+                    bestB = b;
+                    bestDiff = diff;
+                }
+            }
+        }
+        if (bestDiff == null) {
+            return null;
+        }
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("RecipeA", bestA);
+        map.put("RecipeB", bestB);
+        map.put("CaloriesA", round(recipes.get(bestA)));
+        map.put("CaloriesB", round(recipes.get(bestB)));
+        map.put("Difference", round(bestDiff));
+        return map;
+    }
+
+    private static double round(BigDecimal value) {
+        return value.setScale(1, RoundingMode.HALF_UP).doubleValue();
+    }
+}
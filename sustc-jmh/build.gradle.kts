@@ -0,0 +1,40 @@
+import org.springframework.boot.gradle.tasks.bundling.BootJar
+import org.springframework.boot.gradle.tasks.run.BootRun
+
+plugins {
+    java
+    alias(libs.plugins.spring.boot)
+    alias(libs.plugins.spring.dependencyManagement)
+    alias(libs.plugins.lombok)
+    alias(libs.plugins.jmh)
+}
+
+dependencies {
+    // the benchmarks use package-private members, so always build against the sources
+    jmh(project(":sustc-api"))
+    jmh(project(":sustc-runner"))
+    jmh("org.springframework.boot:spring-boot-starter-jdbc")
+    jmh("org.postgresql:postgresql")
+    jmh("org.furyio:fury-core:0.3.1")
+}
+
+jmh {
+    jmhVersion = "1.37"
+    // e.g. ./gradlew :sustc-jmh:jmh -Pjmh.includes=CsvParsing
+    (findProperty("jmh.includes") as String?)?.let { includes = listOf(it) }
+    // e.g. -Pjmh.profilers=gc for the allocated bytes per operation
+    (findProperty("jmh.profilers") as String?)?.let { profilers = it.split(",") }
+    // connection of the DB-bound benchmarks, defaults to the one in application.yml
+    jvmArgsAppend = listOf("sustc.jdbc.url", "sustc.jdbc.username", "sustc.jdbc.password")
+        .mapNotNull { key -> findProperty(key)?.let { "-D$key=$it" } }
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("results/jmh/results.json")
+}
+
+tasks.withType<BootRun> {
+    enabled = false
+}
+
+tasks.withType<BootJar> {
+    enabled = false
+}
@@ -0,0 +1,55 @@
+package io.sustc.command;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Field parsers used by {@code db csv2ser}, on values shaped like the ones in the data files.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CsvParsingBenchmark {
+
+    private final String ingredients = "c(\"blueberries\", \"granulated sugar\", \"vanilla yogurt\", \"lemon juice\", " +
+            "\"all-purpose flour\", \"baking powder\", \"salt\", \"butter\", \"eggs\", \"milk\")";
+
+    private final String plainList = "blueberries, granulated sugar, vanilla yogurt, lemon juice";
+
+    private final String idList = "\"1533, 2046, 4291, 8630, 13082, 19921, 24750, 31172, 40122, 52108, 63870, 70931\"";
+
+    private final String timestamp = "1999-08-24T04:19:00Z";
+
+    @Benchmark
+    public String[] parseQuotedList() {
+        return DatabaseCommand.parseCsvList(ingredients);
+    }
+
+    @Benchmark
+    public String[] parsePlainList() {
+        return DatabaseCommand.parseCsvList(plainList);
+    }
+
+    @Benchmark
+    public long[] parseLongList() {
+        return DatabaseCommand.parseCsvLongList(idList);
+    }
+
+    @Benchmark
+    public Timestamp parseTimestamp() {
+        return DatabaseCommand.parseTimestamp(timestamp);
+    }
+}
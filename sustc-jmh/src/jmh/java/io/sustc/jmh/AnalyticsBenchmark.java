@@ -0,0 +1,66 @@
+package io.sustc.jmh;
+
+import io.sustc.service.RecipeService;
+import io.sustc.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole-table analytical queries, which take from milliseconds to minutes,
+ * so every call is timed on its own instead of in a timed loop.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnalyticsBenchmark {
+
+    private AnnotationConfigApplicationContext context;
+
+    private RecipeService recipeService;
+
+    private UserService userService;
+
+    @Setup
+    public void setup() {
+        context = ServiceContext.start();
+        recipeService = context.getBean(RecipeService.class);
+        userService = context.getBean(UserService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Map<String, Object> closestCaloriePair() {
+        return recipeService.getClosestCaloriePair();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> top3MostComplexRecipes() {
+        return recipeService.getTop3MostComplexRecipesByIngredients();
+    }
+
+    @Benchmark
+    public Map<String, Object> userWithHighestFollowRatio() {
+        return userService.getUserWithHighestFollowRatio();
+    }
+}
@@ -0,0 +1,128 @@
+package io.sustc.jmh;
+
+import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.UserRecord;
+import io.sustc.service.RecipeService;
+import io.sustc.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking up a page of {@code size} recipes, recipe names or users, one id at a time
+ * against one {@code id = ANY(?)} query.
+ * Import the data first.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchLookupBenchmark {
+
+    private static final int SAMPLE_SIZE = 1000;
+
+    @Param({"10", "50"})
+    private int size;
+
+    private AnnotationConfigApplicationContext context;
+
+    private RecipeService recipeService;
+
+    private UserService userService;
+
+    private long[] recipeIds;
+
+    private long[] userIds;
+
+    @Setup
+    public void setup() {
+        context = ServiceContext.start();
+        recipeService = context.getBean(RecipeService.class);
+        userService = context.getBean(UserService.class);
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        recipeIds = jdbcTemplate.queryForList(
+                "SELECT id FROM recipes WHERE NOT is_deleted ORDER BY random() LIMIT ?", Long.class, SAMPLE_SIZE)
+                .stream().mapToLong(Long::longValue).toArray();
+        userIds = jdbcTemplate.queryForList(
+                "SELECT id FROM users ORDER BY random() LIMIT ?", Long.class, SAMPLE_SIZE)
+                .stream().mapToLong(Long::longValue).toArray();
+        if (recipeIds.length < size || userIds.length < size) {
+            throw new IllegalStateException("Not enough data in the database, import the data before running this benchmark");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<String> namesOneByOne() {
+        List<String> names = new ArrayList<>(size);
+        for (long id : page(recipeIds)) {
+            names.add(recipeService.getNameFromID(id));
+        }
+        return names;
+    }
+
+    @Benchmark
+    public List<String> namesBatch() {
+        return recipeService.getNamesByIds(page(recipeIds));
+    }
+
+    @Benchmark
+    public List<RecipeRecord> recipesOneByOne() {
+        List<RecipeRecord> recipes = new ArrayList<>(size);
+        for (long id : page(recipeIds)) {
+            recipes.add(recipeService.getRecipeById(id));
+        }
+        return recipes;
+    }
+
+    @Benchmark
+    public List<RecipeRecord> recipesBatch() {
+        return recipeService.getRecipesByIds(page(recipeIds));
+    }
+
+    @Benchmark
+    public List<UserRecord> usersOneByOne() {
+        List<UserRecord> users = new ArrayList<>(size);
+        for (long id : page(userIds)) {
+            users.add(userService.getById(id));
+        }
+        return users;
+    }
+
+    @Benchmark
+    public List<UserRecord> usersBatch() {
+        return userService.getUsersByIds(page(userIds));
+    }
+
+    private long[] page(long[] sample) {
+        long[] ids = new long[size];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < size; i++) {
+            ids[i] = sample[random.nextInt(sample.length)];
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,97 @@
+package io.sustc.jmh;
+
+import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.UserRecord;
+import io.sustc.service.RecipeService;
+import io.sustc.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-id lookups from many threads at once, each a query of its own ({@code collapse = false})
+ * or collapsed into batch queries ({@code collapse = true}, i.e. {@code sustc.service.collapse-lookups}).
+ * Import the data first.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CollapsedLookupBenchmark {
+
+    private static final int SAMPLE_SIZE = 1000;
+
+    @Param({"false", "true"})
+    private boolean collapse;
+
+    private AnnotationConfigApplicationContext context;
+
+    private RecipeService recipeService;
+
+    private UserService userService;
+
+    private List<Long> recipeIds;
+
+    private List<Long> userIds;
+
+    @Setup
+    public void setup() {
+        System.setProperty("sustc.service.collapse-lookups", String.valueOf(collapse));
+        context = ServiceContext.start();
+        recipeService = context.getBean(RecipeService.class);
+        userService = context.getBean(UserService.class);
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        recipeIds = jdbcTemplate.queryForList(
+                "SELECT id FROM recipes WHERE NOT is_deleted ORDER BY random() LIMIT ?", Long.class, SAMPLE_SIZE);
+        userIds = jdbcTemplate.queryForList(
+                "SELECT id FROM users ORDER BY random() LIMIT ?", Long.class, SAMPLE_SIZE);
+        if (recipeIds.isEmpty() || userIds.isEmpty()) {
+            throw new IllegalStateException("No data in the database, import the data before running this benchmark");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        System.clearProperty("sustc.service.collapse-lookups");
+    }
+
+    @Benchmark
+    public String getNameFromID() {
+        return recipeService.getNameFromID(pick(recipeIds));
+    }
+
+    @Benchmark
+    public RecipeRecord getRecipeById() {
+        return recipeService.getRecipeById(pick(recipeIds));
+    }
+
+    @Benchmark
+    public UserRecord getById() {
+        return userService.getById(pick(userIds));
+    }
+
+    private static <T> T pick(List<T> sample) {
+        return sample.get(ThreadLocalRandom.current().nextInt(sample.size()));
+    }
+}
@@ -0,0 +1,99 @@
+package io.sustc.jmh;
+
+import io.sustc.importer.EdgeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffering the like pairs of the reviews as the import does, with the former {@code List<long[]>}
+ * and with {@link EdgeBuffer}, then reading every pair back once.
+ * <p>
+ * Each invocation builds the whole structure, so with {@code -Pjmh.profilers=gc} the
+ * {@code gc.alloc.rate.norm} column is the heap footprint of the structure in bytes.
+ * Off-heap memory is not seen by the gc profiler; see {@link EdgeBuffer#footprint()} for it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class EdgeBufferBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int edges;
+
+    private long[][] likes;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        // 平均每条评论约 4 个点赞
+        List<long[]> reviews = new ArrayList<>();
+        int remaining = edges;
+        while (remaining > 0) {
+            long[] users = new long[Math.min(remaining, random.nextInt(8) + 1)];
+            for (int i = 0; i < users.length; i++) {
+                users[i] = random.nextInt(1_000_000);
+            }
+            reviews.add(users);
+            remaining -= users.length;
+        }
+        likes = reviews.toArray(new long[0][]);
+    }
+
+    @Benchmark
+    public long pairList() {
+        List<long[]> pairs = new ArrayList<>();
+        for (int review = 0; review < likes.length; review++) {
+            for (long user : likes[review]) {
+                pairs.add(new long[]{review, user});
+            }
+        }
+        long checksum = 0;
+        for (long[] pair : pairs) {
+            checksum += pair[0] ^ pair[1];
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public long onHeap() {
+        return fillAndRead(EdgeBuffer.onHeap(edges));
+    }
+
+    @Benchmark
+    public long onHeapGrowing() {
+        return fillAndRead(EdgeBuffer.onHeap(0));
+    }
+
+    @Benchmark
+    public long offHeap() {
+        return fillAndRead(EdgeBuffer.offHeap(edges));
+    }
+
+    private long fillAndRead(EdgeBuffer buffer) {
+        for (int review = 0; review < likes.length; review++) {
+            buffer.addAll(review, likes[review]);
+        }
+        long checksum = 0;
+        for (int i = 0; i < buffer.size(); i++) {
+            checksum += buffer.source(i) ^ buffer.target(i);
+        }
+        return checksum;
+    }
+}
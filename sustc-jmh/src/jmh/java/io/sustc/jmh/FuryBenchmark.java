@@ -0,0 +1,98 @@
+package io.sustc.jmh;
+
+import io.fury.Fury;
+import io.fury.ThreadSafeFury;
+import io.fury.config.CompatibleMode;
+import io.fury.config.Language;
+import io.sustc.dto.RecipeRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * (De)serialization of {@link RecipeRecord} lists, as done for the {@code .ser} files,
+ * with the same Fury settings as the runner.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FuryBenchmark {
+
+    @Param({"1000", "10000"})
+    private int size;
+
+    private ThreadSafeFury fury;
+
+    private List<RecipeRecord> recipes;
+
+    private byte[] serialized;
+
+    @Setup
+    public void setup() {
+        fury = Fury.builder()
+                .requireClassRegistration(false)
+                .withLanguage(Language.JAVA)
+                .withRefTracking(true)
+                .withCompatibleMode(CompatibleMode.COMPATIBLE)
+                .withAsyncCompilation(true)
+                .buildThreadSafeFury();
+
+        recipes = new ArrayList<>(size);
+        Timestamp published = Timestamp.valueOf("2005-09-16 08:32:00");
+        for (int i = 0; i < size; i++) {
+            recipes.add(RecipeRecord.builder()
+                    .RecipeId(i)
+                    .name("recipe " + i)
+                    .authorId(i % 997)
+                    .authorName("author " + i % 997)
+                    .cookTime("PT45M")
+                    .prepTime("PT15M")
+                    .totalTime("PT1H")
+                    .datePublished(published)
+                    .description("a moderately long description of recipe " + i)
+                    .recipeCategory("Dessert")
+                    .recipeIngredientParts(new String[]{"blueberries", "granulated sugar", "lemon juice", "butter"})
+                    .aggregatedRating(4.5f)
+                    .reviewCount(i % 13)
+                    .calories(312.5f)
+                    .fatContent(12.1f)
+                    .saturatedFatContent(3.4f)
+                    .cholesterolContent(25f)
+                    .sodiumContent(410.2f)
+                    .carbohydrateContent(48.3f)
+                    .fiberContent(2.2f)
+                    .sugarContent(21.7f)
+                    .proteinContent(6.5f)
+                    .recipeServings(4)
+                    .recipeYield("1 pie")
+                    .build());
+        }
+        serialized = fury.serialize(recipes);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return fury.serialize(recipes);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return fury.deserialize(serialized);
+    }
+}
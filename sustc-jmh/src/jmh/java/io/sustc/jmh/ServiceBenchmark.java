@@ -0,0 +1,114 @@
+package io.sustc.jmh;
+
+import io.sustc.dto.AuthInfo;
+import io.sustc.dto.FeedItem;
+import io.sustc.dto.PageResult;
+import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.ReviewRecord;
+import io.sustc.dto.UserRecord;
+import io.sustc.service.RecipeService;
+import io.sustc.service.ReviewService;
+import io.sustc.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-only service calls against a local database that already holds the imported data
+ * (run {@code db import} in the shell first).
+ * Each invocation picks a random recipe / user from a sample taken at setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServiceBenchmark {
+
+    private static final int SAMPLE_SIZE = 1000;
+
+    private AnnotationConfigApplicationContext context;
+
+    private RecipeService recipeService;
+
+    private ReviewService reviewService;
+
+    private UserService userService;
+
+    private List<Long> recipeIds;
+
+    private List<AuthInfo> users;
+
+    @Setup
+    public void setup() {
+        context = ServiceContext.start();
+        recipeService = context.getBean(RecipeService.class);
+        reviewService = context.getBean(ReviewService.class);
+        userService = context.getBean(UserService.class);
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        recipeIds = jdbcTemplate.queryForList(
+                "SELECT id FROM recipes WHERE NOT is_deleted ORDER BY random() LIMIT ?", Long.class, SAMPLE_SIZE);
+        users = jdbcTemplate.query(
+                "SELECT id, password FROM users WHERE NOT is_deleted ORDER BY random() LIMIT ?",
+                (rs, rowNum) -> new AuthInfo(rs.getLong("id"), rs.getString("password")),
+                SAMPLE_SIZE);
+        if (recipeIds.isEmpty() || users.isEmpty()) {
+            throw new IllegalStateException("No data in the database, import the data before running this benchmark");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public RecipeRecord getRecipeById() {
+        return recipeService.getRecipeById(pick(recipeIds));
+    }
+
+    @Benchmark
+    public PageResult<RecipeRecord> searchRecipes() {
+        return recipeService.searchRecipes("chicken", null, 4.0, 1, 10, "rating_desc");
+    }
+
+    @Benchmark
+    public PageResult<ReviewRecord> listByRecipe() {
+        return reviewService.listByRecipe(pick(recipeIds), 1, 10, "likes_desc");
+    }
+
+    @Benchmark
+    public long login() {
+        return userService.login(pick(users));
+    }
+
+    @Benchmark
+    public UserRecord getUserById() {
+        return userService.getById(pick(users).getAuthorId());
+    }
+
+    @Benchmark
+    public PageResult<FeedItem> feed() {
+        return userService.feed(pick(users), 1, 10, null);
+    }
+
+    private static <T> T pick(List<T> sample) {
+        return sample.get(ThreadLocalRandom.current().nextInt(sample.size()));
+    }
+}
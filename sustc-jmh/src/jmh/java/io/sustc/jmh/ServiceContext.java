@@ -0,0 +1,55 @@
+package io.sustc.jmh;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.sustc.service.ConnectionRoles;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import javax.sql.DataSource;
+
+/**
+ * Minimal Spring context with the service implementations, without Spring Boot and the shell.
+ * <p>
+ * The connection defaults to the one in the runner's {@code application.yml}, and can be
+ * changed with the {@code sustc.jdbc.url}, {@code sustc.jdbc.username} and
+ * {@code sustc.jdbc.password} system properties. With {@code sustc.jdbc.schema}, the connections
+ * use that schema instead of {@code public}.
+ * <p>
+ * The imports and the analytics share the one pool, their beans are aliases of the OLTP ones.
+ */
+@Configuration
+@EnableTransactionManagement
+@ComponentScan("io.sustc.service")
+public class ServiceContext {
+
+    public static AnnotationConfigApplicationContext start() {
+        return new AnnotationConfigApplicationContext(ServiceContext.class);
+    }
+
+    @Bean(name = {"dataSource", ConnectionRoles.IMPORT_DATA_SOURCE, ConnectionRoles.ANALYTICS_DATA_SOURCE},
+            destroyMethod = "close")
+    public HikariDataSource dataSource() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(System.getProperty("sustc.jdbc.url", "jdbc:postgresql://localhost:5432/sustc"));
+        dataSource.setUsername(System.getProperty("sustc.jdbc.username", "sustc"));
+        dataSource.setPassword(System.getProperty("sustc.jdbc.password", "123456"));
+        dataSource.setSchema(System.getProperty("sustc.jdbc.schema"));
+        return dataSource;
+    }
+
+    @Bean(name = {"jdbcTemplate", ConnectionRoles.IMPORT_JDBC_TEMPLATE, ConnectionRoles.ANALYTICS_JDBC_TEMPLATE})
+    public JdbcTemplate jdbcTemplate(DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+
+    @Bean(name = {"transactionManager", ConnectionRoles.IMPORT_TRANSACTION_MANAGER})
+    public PlatformTransactionManager transactionManager(DataSource dataSource) {
+        return new DataSourceTransactionManager(dataSource);
+    }
+}
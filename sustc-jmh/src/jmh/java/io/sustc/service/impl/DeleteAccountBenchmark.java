@@ -0,0 +1,128 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.AuthInfo;
+import io.sustc.jmh.ServiceContext;
+import io.sustc.service.DatabaseService;
+import io.sustc.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link UserService#deleteAccount} of users with large follower sets, against the statements it
+ * used to run one by one: the auth and existence lookups, the soft delete, and a delete of the
+ * follows in each direction.
+ * <p>
+ * The setup fills a scratch schema with {@value #CELEBRITIES} users, each followed by
+ * {@code followers} users and following 100 of them. Every call runs in a transaction that is
+ * rolled back, so the same users can be deleted again. With {@code followeeIndex = false} the
+ * index on {@code user_follows(followee_id)} is dropped, and deleting the follows of a user's
+ * followers scans the whole table.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeleteAccountBenchmark {
+
+    private static final String SCHEMA = "jmh_delete_account";
+
+    private static final int CELEBRITIES = 16;
+
+    @Param({"1000", "20000", "100000"})
+    private int followers;
+
+    @Param({"true", "false"})
+    private boolean followeeIndex;
+
+    private AnnotationConfigApplicationContext context;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private TransactionTemplate transactionTemplate;
+
+    private UserService userService;
+
+    @Setup
+    public void setup() {
+        System.setProperty("sustc.jdbc.schema", SCHEMA);
+        context = ServiceContext.start();
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        userService = context.getBean(UserService.class);
+
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        jdbcTemplate.execute("CREATE SCHEMA " + SCHEMA);
+        DatabaseServiceImpl databaseService =
+                (DatabaseServiceImpl) AopProxyUtils.getSingletonTarget(context.getBean(DatabaseService.class));
+        databaseService.createTables(false);
+        // 1 到 CELEBRITIES 号用户被其余所有用户关注，并各自关注 100 个用户
+        jdbcTemplate.update("INSERT INTO users (id, name, password, gender, age, is_deleted) " +
+                "SELECT g, 'user ' || g, 'password', 'Male', 30, FALSE FROM generate_series(1, ?) g",
+                CELEBRITIES + followers);
+        jdbcTemplate.update("INSERT INTO user_follows (follower_id, followee_id) " +
+                "SELECT f, c FROM generate_series(1, ?) c, generate_series(?, ?) f",
+                CELEBRITIES, CELEBRITIES + 1, CELEBRITIES + followers);
+        jdbcTemplate.update("INSERT INTO user_follows (follower_id, followee_id) " +
+                "SELECT c, f FROM generate_series(1, ?) c, generate_series(?, ?) f",
+                CELEBRITIES, CELEBRITIES + 1, CELEBRITIES + Math.min(100, followers));
+        databaseService.createConstraints(false);
+        if (!followeeIndex) {
+            jdbcTemplate.execute("DROP INDEX idx_follows_followee");
+        }
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @TearDown
+    public void tearDown() {
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        context.close();
+        System.clearProperty("sustc.jdbc.schema");
+    }
+
+    @Benchmark
+    public Boolean deleteAccount() {
+        long userId = pickCelebrity();
+        return transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            return userService.deleteAccount(new AuthInfo(userId, "password"), userId);
+        });
+    }
+
+    @Benchmark
+    public Boolean deleteAccountStatements() {
+        long userId = pickCelebrity();
+        return transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            jdbcTemplate.queryForObject("SELECT is_deleted FROM users WHERE id = ?", Boolean.class, userId);
+            jdbcTemplate.queryForObject("SELECT is_deleted FROM users WHERE id = ?", Boolean.class, userId);
+            jdbcTemplate.update("UPDATE users SET is_deleted = TRUE WHERE id = ?", userId);
+            jdbcTemplate.update("DELETE FROM user_follows WHERE follower_id = ?", userId);
+            jdbcTemplate.update("DELETE FROM user_follows WHERE followee_id = ?", userId);
+            return true;
+        });
+    }
+
+    private static long pickCelebrity() {
+        return 1 + ThreadLocalRandom.current().nextInt(CELEBRITIES);
+    }
+}
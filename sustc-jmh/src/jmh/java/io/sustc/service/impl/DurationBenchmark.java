@@ -0,0 +1,46 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.RecipeRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ISO-8601 duration handling of {@link RecipeServiceImpl}, run for every recipe it returns.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DurationBenchmark {
+
+    @Param({"PT45M", "PT1H30M", "PT24H", ""})
+    private String cookTime;
+
+    private final RecipeServiceImpl service = new RecipeServiceImpl();
+
+    @Benchmark
+    public int parseDuration() {
+        return service.parseDuration(cookTime);
+    }
+
+    @Benchmark
+    public RecipeRecord calculateTotalTime() {
+        RecipeRecord record = new RecipeRecord();
+        record.setCookTime(cookTime);
+        record.setPrepTime("PT15M");
+        service.calculateTotalTime(record);
+        return record;
+    }
+}
@@ -0,0 +1,129 @@
+package io.sustc.service.impl;
+
+import io.sustc.dto.PageResult;
+import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.ReviewRecord;
+import io.sustc.jmh.ServiceContext;
+import io.sustc.service.DatabaseService;
+import io.sustc.service.ReviewService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The review endpoints on plain tables ({@code partitions = 0}) and on hash-partitioned
+ * {@code reviews} and {@code review_likes} tables.
+ * <p>
+ * The setup copies the data in {@code public} to a scratch schema laid out by
+ * {@link DatabaseServiceImpl#createTables} with the given number of partitions, and the services
+ * use that schema, so the data in {@code public} is left as it is. Import the data first.
+ * The lookups by recipe and by review id can be pruned to one partition,
+ * the lookups of a review by its own id can't.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReviewPartitionBenchmark {
+
+    private static final int SAMPLE_SIZE = 1000;
+
+    @Param({"0", "8", "32"})
+    private int partitions;
+
+    private String schema;
+
+    private AnnotationConfigApplicationContext context;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private ReviewService reviewService;
+
+    private List<Long> recipeIds;
+
+    private List<Long> reviewIds;
+
+    @Setup
+    public void setup() {
+        schema = "jmh_reviews_p" + partitions;
+        System.setProperty("sustc.schema.review-partitions", String.valueOf(partitions));
+        System.setProperty("sustc.jdbc.schema", schema);
+        context = ServiceContext.start();
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        reviewService = context.getBean(ReviewService.class);
+
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + schema + " CASCADE");
+        jdbcTemplate.execute("CREATE SCHEMA " + schema);
+        DatabaseServiceImpl databaseService =
+                (DatabaseServiceImpl) AopProxyUtils.getSingletonTarget(context.getBean(DatabaseService.class));
+        databaseService.createTables(false);
+        for (String table : new String[]{"users", "recipes", "recipe_ingredients", "reviews", "review_likes", "user_follows"}) {
+            jdbcTemplate.execute("INSERT INTO " + table + " SELECT * FROM public." + table);
+        }
+        databaseService.createConstraints(false);
+        jdbcTemplate.execute("ANALYZE");
+
+        recipeIds = jdbcTemplate.queryForList(
+                "SELECT recipe_id FROM reviews GROUP BY recipe_id ORDER BY random() LIMIT ?", Long.class, SAMPLE_SIZE);
+        reviewIds = jdbcTemplate.queryForList(
+                "SELECT id FROM reviews ORDER BY random() LIMIT ?", Long.class, SAMPLE_SIZE);
+        if (recipeIds.isEmpty()) {
+            throw new IllegalStateException("No reviews in the database, import the data before running this benchmark");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + schema + " CASCADE");
+        context.close();
+        System.clearProperty("sustc.schema.review-partitions");
+        System.clearProperty("sustc.jdbc.schema");
+    }
+
+    @Benchmark
+    public PageResult<ReviewRecord> listByRecipeByLikes() {
+        return reviewService.listByRecipe(pick(recipeIds), 1, 10, "likes_desc");
+    }
+
+    @Benchmark
+    public PageResult<ReviewRecord> listByRecipeByDate() {
+        return reviewService.listByRecipe(pick(recipeIds), 1, 10, "date_desc");
+    }
+
+    @Benchmark
+    public RecipeRecord refreshRecipeAggregatedRating() {
+        return reviewService.refreshRecipeAggregatedRating(pick(recipeIds));
+    }
+
+    @Benchmark
+    public Long likeCount() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM review_likes WHERE review_id = ?", Long.class, pick(reviewIds));
+    }
+
+    @Benchmark
+    public Long reviewAuthor() {
+        return jdbcTemplate.queryForObject("SELECT author_id FROM reviews WHERE id = ?", Long.class, pick(reviewIds));
+    }
+
+    private static <T> T pick(List<T> sample) {
+        return sample.get(ThreadLocalRandom.current().nextInt(sample.size()));
+    }
+}
@@ -0,0 +1,136 @@
+package io.sustc.service.impl;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Row mappers of the services, over an in-memory {@link CachedRowSet} so that only
+ * the mapping itself (column lookup by label, boxing, DTO construction) is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RowMapperBenchmark {
+
+    private static final int ROWS = 1000;
+
+    private CachedRowSet recipes;
+
+    private CachedRowSet reviews;
+
+    private CachedRowSet users;
+
+    @Setup
+    public void setup() throws SQLException {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        recipes = rowSet(new String[]{
+                "id", "author_id", "author_name", "name", "description", "category", "cook_time_iso", "prep_time_iso",
+                "date_published", "aggregated_rating", "review_count", "calories", "fat_content",
+                "saturated_fat_content", "cholesterol_content", "sodium_content", "carbohydrate_content",
+                "fiber_content", "sugar_content", "protein_content", "servings", "yield"
+        }, new int[]{
+                Types.BIGINT, Types.BIGINT, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+                Types.VARCHAR, Types.TIMESTAMP, Types.REAL, Types.INTEGER, Types.REAL, Types.REAL, Types.REAL,
+                Types.REAL, Types.REAL, Types.REAL, Types.REAL, Types.REAL, Types.REAL, Types.INTEGER, Types.VARCHAR
+        }, i -> new Object[]{
+                (long) i, (long) i % 97, "author " + i % 97, "recipe " + i, "a description of recipe " + i, "Dessert",
+                "PT45M", "PT15M", now, i % 5 == 0 ? null : 4.5f, i % 13, 312.5f, 12.1f, 3.4f, 25f, 410.2f, 48.3f,
+                2.2f, 21.7f, 6.5f, 4, "1 pie"
+        });
+        reviews = rowSet(new String[]{
+                "id", "recipe_id", "author_id", "author_name", "rating", "content", "date_submitted", "date_modified"
+        }, new int[]{
+                Types.BIGINT, Types.BIGINT, Types.BIGINT, Types.VARCHAR, Types.INTEGER, Types.VARCHAR,
+                Types.TIMESTAMP, Types.TIMESTAMP
+        }, i -> new Object[]{
+                (long) i, (long) i % 211, (long) i % 97, "author " + i % 97, i % 5 + 1, "review " + i, now, now
+        });
+        users = rowSet(new String[]{
+                "id", "name", "gender", "age", "password", "is_deleted"
+        }, new int[]{
+                Types.BIGINT, Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.VARCHAR, Types.BOOLEAN
+        }, i -> new Object[]{
+                (long) i, "user " + i, i % 2 == 0 ? "Male" : "Female", 18 + i % 60, "password" + i, i % 50 == 0
+        });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void recipeRowMapper(Blackhole bh) throws SQLException {
+        mapAll(recipes, new RecipeServiceImpl.RecipeRowMapper(), bh);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void reviewRowMapper(Blackhole bh) throws SQLException {
+        mapAll(reviews, new ReviewServiceImpl.ReviewRowMapper(), bh);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void userRowMapper(Blackhole bh) throws SQLException {
+        mapAll(users, new UserServiceImpl.UserRowMapper(), bh);
+    }
+
+    private static void mapAll(CachedRowSet rs, RowMapper<?> mapper, Blackhole bh) throws SQLException {
+        rs.beforeFirst();
+        int rowNum = 0;
+        while (rs.next()) {
+            bh.consume(mapper.mapRow(rs, rowNum++));
+        }
+    }
+
+    private interface RowSource {
+        Object[] row(int i);
+    }
+
+    private static CachedRowSet rowSet(String[] columns, int[] types, RowSource source) throws SQLException {
+        RowSetMetaDataImpl meta = new RowSetMetaDataImpl();
+        meta.setColumnCount(columns.length);
+        for (int c = 0; c < columns.length; c++) {
+            meta.setColumnName(c + 1, columns[c]);
+            meta.setColumnLabel(c + 1, columns[c]);
+            meta.setColumnType(c + 1, types[c]);
+            meta.setNullable(c + 1, RowSetMetaDataImpl.columnNullable);
+        }
+
+        CachedRowSet rs = RowSetProvider.newFactory().createCachedRowSet();
+        rs.setMetaData(meta);
+        rs.moveToInsertRow();
+        for (int i = 0; i < ROWS; i++) {
+            Object[] row = source.row(i);
+            for (int c = 0; c < row.length; c++) {
+                if (row[c] == null) {
+                    rs.updateNull(c + 1);
+                } else {
+                    rs.updateObject(c + 1, row[c]);
+                }
+            }
+            rs.insertRow();
+        }
+        rs.moveToCurrentRow();
+        return rs;
+    }
+}
@@ -8,16 +8,21 @@ plugins {
     alias(libs.plugins.lombok)
 }
 
+// Spring Boot 2.7 选择的 42.3 驱动在等待服务器时占用监视器，会把虚拟线程固定在载体线程上
+extra["postgresql.version"] = "42.7.4"
+
 dependencies {
     implementation(
         fileTree("$rootDir/submit").matching { include("*.jar") }
             .takeIf { !it.isEmpty } ?: project(":sustc-api")
     )
+    implementation("org.springframework.boot:spring-boot-starter-jdbc")
     runtimeOnly("org.postgresql:postgresql")
 
     implementation("org.apache.commons:commons-lang3")
     implementation("com.fasterxml.jackson.core:jackson-databind")
     implementation("org.furyio:fury-core:0.3.1")
+    implementation("org.hdrhistogram:HdrHistogram:2.1.12")
 
     implementation(platform("org.springframework.shell:spring-shell-dependencies:2.1.13"))
     implementation("org.springframework.shell:spring-shell-starter")
@@ -31,6 +36,15 @@ tasks.withType<JavaExec> {
     standardInput = System.`in`
 }
 
+// -Pruntime.jdk=21 用该版本的工具链运行，虚拟线程（benchmark.load.virtual-threads）需要 21 及以上
+(findProperty("runtime.jdk") as String?)?.let { version ->
+    tasks.withType<JavaExec>().configureEach {
+        javaLauncher.set(javaToolchains.launcherFor {
+            languageVersion.set(JavaLanguageVersion.of(version))
+        })
+    }
+}
+
 tasks.register("benchmark") {
     group = "application"
     description = "Run the benchmark script"
@@ -0,0 +1,151 @@
+package io.sustc;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.sustc.service.ConnectionRoles;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One connection pool per workload: {@code oltp} for the service calls, {@code import} for the
+ * imports and {@code analytics} for the global analytics (see {@link ConnectionRoles}), so that
+ * a long import or analytic query can't take the connections of the service calls.
+ * <p>
+ * Every pool connects with {@code spring.datasource} and the settings of
+ * {@code spring.datasource.hikari}, then {@code sustc.workload.<name>} sets its size and the
+ * session settings of its connections. A setting left out keeps the server default.
+ * <p>
+ * The services require the beans named in {@link ConnectionRoles}, so every pool is defined
+ * here even when its workload has no settings.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sustc")
+@Data
+@Slf4j
+public class WorkloadConfig {
+
+    public static final String OLTP = "oltp";
+
+    public static final String IMPORT = "import";
+
+    public static final String ANALYTICS = "analytics";
+
+    /**
+     * Settings of each workload, by name.
+     */
+    private Map<String, Workload> workload = new HashMap<>();
+
+    @Data
+    public static class Workload {
+
+        /**
+         * Maximum number of connections in the pool.
+         */
+        private int poolSize = 10;
+
+        /**
+         * {@code statement_timeout} of the connections, e.g. {@code 30s}, {@code 0} for none.
+         */
+        private String statementTimeout;
+
+        /**
+         * {@code work_mem} of the connections, e.g. {@code 64MB}.
+         */
+        private String workMem;
+
+        /**
+         * {@code synchronous_commit} of the connections. {@code off} speeds up bulk loads but
+         * loses the last commits on a crash, so only set it for data that can be imported again.
+         */
+        private String synchronousCommit;
+    }
+
+    @Bean
+    @Primary
+    HikariDataSource dataSource(DataSourceProperties properties, Environment environment) {
+        return pool(OLTP, properties, environment);
+    }
+
+    @Bean(name = ConnectionRoles.IMPORT_DATA_SOURCE)
+    HikariDataSource importDataSource(DataSourceProperties properties, Environment environment) {
+        return pool(IMPORT, properties, environment);
+    }
+
+    @Bean(name = ConnectionRoles.ANALYTICS_DATA_SOURCE)
+    HikariDataSource analyticsDataSource(DataSourceProperties properties, Environment environment) {
+        return pool(ANALYTICS, properties, environment);
+    }
+
+    // 定义了多个 JdbcTemplate 和事务管理器后 Spring Boot 不再自动创建，OLTP 的也要在这里定义
+
+    @Bean
+    @Primary
+    JdbcTemplate jdbcTemplate(DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+
+    @Bean
+    @Primary
+    DataSourceTransactionManager transactionManager(DataSource dataSource) {
+        return new DataSourceTransactionManager(dataSource);
+    }
+
+    @Bean(name = ConnectionRoles.IMPORT_JDBC_TEMPLATE)
+    JdbcTemplate importJdbcTemplate(@Qualifier(ConnectionRoles.IMPORT_DATA_SOURCE) DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+
+    @Bean(name = ConnectionRoles.IMPORT_TRANSACTION_MANAGER)
+    DataSourceTransactionManager importTransactionManager(@Qualifier(ConnectionRoles.IMPORT_DATA_SOURCE) DataSource dataSource) {
+        return new DataSourceTransactionManager(dataSource);
+    }
+
+    @Bean(name = ConnectionRoles.ANALYTICS_JDBC_TEMPLATE)
+    JdbcTemplate analyticsJdbcTemplate(@Qualifier(ConnectionRoles.ANALYTICS_DATA_SOURCE) DataSource dataSource) {
+        return new JdbcTemplate(dataSource);
+    }
+
+    private HikariDataSource pool(String name, DataSourceProperties properties, Environment environment) {
+        val dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(dataSource));
+        val settings = workload.getOrDefault(name, new Workload());
+        dataSource.setPoolName("sustc-" + name);
+        dataSource.setMaximumPoolSize(settings.getPoolSize());
+        val sessionSql = sessionSql(settings);
+        if (sessionSql != null) {
+            dataSource.setConnectionInitSql(sessionSql);
+        }
+        log.debug("Pool {}: {} connections, {}", name, settings.getPoolSize(), sessionSql);
+        return dataSource;
+    }
+
+    private static String sessionSql(Workload settings) {
+        val statements = new ArrayList<String>();
+        addSetting(statements, "statement_timeout", settings.getStatementTimeout());
+        addSetting(statements, "work_mem", settings.getWorkMem());
+        addSetting(statements, "synchronous_commit", settings.getSynchronousCommit());
+        return statements.isEmpty() ? null : String.join("; ", statements);
+    }
+
+    private static void addSetting(ArrayList<String> statements, String name, String value) {
+        if (value != null && !value.isEmpty()) {
+            statements.add("SET " + name + " = '" + value.replace("'", "''") + "'");
+        }
+    }
+}
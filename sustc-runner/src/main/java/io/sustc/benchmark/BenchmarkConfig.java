@@ -34,6 +34,59 @@ public class BenchmarkConfig {
      */
     private boolean studentMode = false;
 
+    /**
+     * Indicator for deserializing all data files in the background when the benchmark starts,
+     * instead of reading each file when its step starts.
+     */
+    private boolean preload = true;
+
+    /**
+     * Number of unmeasured runs of each repeatable step before measuring it,
+     * to get JIT compilation, connection creation and plan caching out of the way.
+     */
+    private int warmupIterations = 0;
+
+    /**
+     * Number of measured runs of each repeatable step.
+     * The reported pass count and latency come from the last run.
+     */
+    private int iterations = 1;
+
+    /**
+     * Indicator for recording the SQL statements the services run during the benchmark, with the
+     * parameters of their first calls, to a {@code statements-*.json} file next to the report.
+     * {@code db advise} explains the statements of the latest file.
+     */
+    private boolean recordStatements = false;
+
+    /**
+     * Settings for replaying the test cases of each step concurrently.
+     */
+    private Load load = new Load();
+
+    @Data
+    public static class Load {
+
+        /**
+         * Indicator for replaying each step's cases concurrently instead of one by one.
+         * Steps whose cases depend on each other (e.g., register then login) may lose
+         * some passes in this mode, since the cases are no longer applied in file order.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of concurrent workers replaying the cases of a step. The connections they share
+         * are set by {@code sustc.workload.oltp.pool-size}.
+         */
+        private int threads = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Indicator for running the steps and their workers on virtual threads (Java 21+).
+         * The benchmark fails to start on older runtimes.
+         */
+        private boolean virtualThreads = false;
+    }
+
     @Bean
     ThreadSafeFury fury() {
         return Fury.builder()
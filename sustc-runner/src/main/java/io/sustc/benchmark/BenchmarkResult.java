@@ -1,7 +1,10 @@
 package io.sustc.benchmark;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
 import lombok.Data;
 
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -17,10 +20,52 @@ public class BenchmarkResult {
 
     private Long elapsedTime;
 
+    /**
+     * Number of cases replayed by the step.
+     */
+    private Long caseCnt;
+
+    /**
+     * Number of cases that failed with an exception not handled by the step.
+     */
+    private Long errorCnt;
+
+    /**
+     * Replayed cases per second.
+     */
+    private Double throughput;
+
+    /**
+     * Number of service calls that shared the in-flight query of an identical call,
+     * when {@code sustc.service.single-flight} is enabled.
+     */
+    private Long coalescedCnt;
+
+    /**
+     * Latency distribution of a single case.
+     */
+    private Latency latency;
+
+    /**
+     * Statistics over the measured iterations, when the step ran more than once.
+     */
+    private Iterations iterations;
+
+    /**
+     * Elapsed time in nanoseconds, used to aggregate iterations precisely.
+     */
+    @JsonIgnore
+    private Long elapsedNanos;
+
     public BenchmarkResult(Long elapsedTime) {
         this.elapsedTime = elapsedTime;
     }
 
+    public BenchmarkResult(long elapsed, TimeUnit unit) {
+        this(unit.toMillis(elapsed));
+        this.elapsedNanos = unit.toNanos(elapsed);
+    }
+
     public BenchmarkResult(Long passCnt, Long elapsedTime) {
         this.passCnt = passCnt;
         this.elapsedTime = elapsedTime;
@@ -29,4 +74,59 @@ public class BenchmarkResult {
     public BenchmarkResult(AtomicLong passCnt, Long elapsedTime) {
         this(passCnt.get(), elapsedTime);
     }
+
+    public BenchmarkResult(AtomicLong passCnt, ReplayStats stats) {
+        this(passCnt.get(), stats.getElapsedMillis());
+        this.elapsedNanos = stats.getElapsedNanos();
+        this.caseCnt = stats.getCaseCnt();
+        this.errorCnt = stats.getErrorCnt();
+        this.throughput = stats.getThroughput();
+        this.latency = stats.summarize();
+    }
+
+    /**
+     * Latency distribution of the cases, with values in microseconds.
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Latency {
+
+        private long count;
+
+        private double mean;
+
+        private long p50;
+
+        private long p95;
+
+        private long p99;
+
+        private long p999;
+
+        private long max;
+
+        /**
+         * The full histogram of case latencies in nanoseconds,
+         * in HdrHistogram's compressed encoding, as Base64.
+         */
+        private String histogram;
+    }
+
+    /**
+     * Elapsed time of the measured iterations of a step, in milliseconds.
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Iterations {
+
+        private int warmups;
+
+        private int count;
+
+        private double mean;
+
+        private double stddev;
+
+        private double min;
+    }
 }
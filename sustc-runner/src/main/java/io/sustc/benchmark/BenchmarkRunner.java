@@ -14,12 +14,15 @@ import org.springframework.shell.ShellApplicationRunner;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Objects;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
@@ -31,6 +34,12 @@ import java.util.stream.Collectors;
 @Slf4j
 public class BenchmarkRunner implements ShellApplicationRunner {
 
+    /**
+     * The counter of {@link DatabaseService#getCounters} with the calls that shared the query of
+     * another call, reported per step if the implementation has it.
+     */
+    private static final String COALESCED_COUNTER = "singleFlight.coalesced";
+
     @Autowired
     private BenchmarkConfig benchmarkConfig;
 
@@ -43,21 +52,44 @@ public class BenchmarkRunner implements ShellApplicationRunner {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @Autowired
+    private DatabaseSnapshot databaseSnapshot;
+
+    @Autowired
+    private CaseFileCache caseFiles;
+
+    /**
+     * Only defined with {@code benchmark.record-statements}.
+     */
+    @Autowired(required = false)
+    private StatementRecorder statementRecorder;
+
+    @Autowired
+    private QueryPlanAdvisor queryPlanAdvisor;
+
     @Override
     @SneakyThrows
     public void run(ApplicationArguments args) {
         log.info("Starting benchmark for group {}", databaseService.getGroupMembers());
         log.info("{}", benchmarkConfig);
+        if (benchmarkConfig.isPreload()) {
+            caseFiles.preload();
+        }
 
-        @SuppressWarnings("AlibabaThreadPoolCreation")
-        val executor = Executors.newCachedThreadPool();
+        // 步骤在虚拟线程上运行时，逐个回放的用例也在虚拟线程上调用服务
+        val executor = WorkerPools.newCached(benchmarkConfig.getLoad().isVirtualThreads());
         val results = new LinkedList<BenchmarkResult>();
 
         val sid = databaseService.getGroupMembers().stream().map(String::valueOf).collect(Collectors.joining("_"));
-        val reportFile = Paths.get(ObjectUtils.defaultIfNull(benchmarkConfig.getReportPath(), ""))
-                .resolve(String.format("benchmark-%s-%d.json", sid, System.currentTimeMillis()))
+        val reportDir = Paths.get(ObjectUtils.defaultIfNull(benchmarkConfig.getReportPath(), ""));
+        val startTime = System.currentTimeMillis();
+        val reportFile = reportDir
+                .resolve(String.format("benchmark-%s-%d.json", sid, startTime))
                 .toAbsolutePath()
                 .toFile();
+        if (statementRecorder != null) {
+            statementRecorder.start();
+        }
 
         Arrays.stream(BenchmarkService.class.getMethods())
                 .sequential()
@@ -70,27 +102,7 @@ public class BenchmarkRunner implements ShellApplicationRunner {
                                 method.getName()
                         )
                 ))
-                .map(method -> {
-                    val future = executor.submit(() -> (BenchmarkResult) method.invoke(benchmarkService));
-                    try {
-                        val res = future.get(method.getAnnotation(BenchmarkStep.class).timeout(), TimeUnit.MINUTES);
-                        if (Objects.nonNull(res)) {
-                            res.setId(method.getAnnotation(BenchmarkStep.class).order());
-                        }
-                        return res;
-                    } catch (TimeoutException e) {
-                        log.warn("Task timeout, cancelling it", e);
-                        future.cancel(true);
-                        if (method.getReturnType().equals(Void.TYPE)) {
-                            return null;
-                        }
-                        val res = new BenchmarkResult(-1L);
-                        res.setId(method.getAnnotation(BenchmarkStep.class).order());
-                        return res;
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
-                })
+                .map(method -> measure(executor, method))
                 .filter(Objects::nonNull)
                 .peek(result -> log.info("{}", result))
                 .forEach(res -> {
@@ -104,5 +116,105 @@ public class BenchmarkRunner implements ShellApplicationRunner {
 
         executor.shutdownNow();
         objectMapper.writeValue(reportFile, results);
+        if (statementRecorder != null) {
+            statementRecorder.stop();
+            val statementsFile = reportDir
+                    .resolve(String.format("%s%s-%d.json", QueryPlanAdvisor.STATEMENTS_FILE_PREFIX, sid, startTime))
+                    .toAbsolutePath();
+            queryPlanAdvisor.save(statementRecorder.getStatements(), statementsFile);
+            log.info("Recorded statements saved to {}", statementsFile);
+        }
+        databaseService.getCounters().forEach((name, value) -> log.info("Counter {}: {}", name, value));
+    }
+
+    /**
+     * Runs a step once, or with warm-up and repeated iterations if configured and the step allows it.
+     * Mutating steps get the database restored between runs, so each run sees the same data
+     * and the steps after it see the database as a single run would have left it.
+     */
+    private BenchmarkResult measure(ExecutorService executor, Method method) {
+        val step = method.getAnnotation(BenchmarkStep.class);
+        val warmups = Math.max(0, benchmarkConfig.getWarmupIterations());
+        val iterations = Math.max(1, benchmarkConfig.getIterations());
+        if (!step.repeatable() || warmups + iterations == 1) {
+            return invoke(executor, method);
+        }
+
+        if (step.mutating()) {
+            databaseSnapshot.take();
+        }
+        try {
+            for (int i = 0; i < warmups; i++) {
+                val res = invoke(executor, method);
+                log.debug("Warm-up {}: {}", i + 1, res);
+                if (step.mutating()) {
+                    databaseSnapshot.restore();
+                }
+            }
+            val measured = new ArrayList<BenchmarkResult>(iterations);
+            for (int i = 0; i < iterations; i++) {
+                val res = invoke(executor, method);
+                if (Objects.isNull(res) || res.getElapsedTime() < 0) {
+                    return res;
+                }
+                measured.add(res);
+                if (step.mutating() && i < iterations - 1) {
+                    databaseSnapshot.restore();
+                }
+            }
+            val last = measured.get(measured.size() - 1);
+            last.setIterations(summarize(warmups, measured));
+            return last;
+        } finally {
+            if (step.mutating()) {
+                databaseSnapshot.discard();
+            }
+        }
+    }
+
+    private static BenchmarkResult.Iterations summarize(int warmups, List<BenchmarkResult> measured) {
+        val millis = measured.stream()
+                .mapToDouble(res -> Objects.nonNull(res.getElapsedNanos())
+                        ? res.getElapsedNanos() / 1e6
+                        : res.getElapsedTime())
+                .toArray();
+        val mean = Arrays.stream(millis).average().orElse(0);
+        val variance = millis.length < 2 ? 0 : Arrays.stream(millis)
+                .map(x -> (x - mean) * (x - mean))
+                .sum() / (millis.length - 1);
+        return new BenchmarkResult.Iterations(
+                warmups,
+                millis.length,
+                mean,
+                Math.sqrt(variance),
+                Arrays.stream(millis).min().orElse(0)
+        );
+    }
+
+    private BenchmarkResult invoke(ExecutorService executor, Method method) {
+        val coalescedBefore = databaseService.getCounters().get(COALESCED_COUNTER);
+        val future = executor.submit(() -> (BenchmarkResult) method.invoke(benchmarkService));
+        try {
+            val res = future.get(method.getAnnotation(BenchmarkStep.class).timeout(), TimeUnit.MINUTES);
+            if (Objects.nonNull(res)) {
+                res.setId(method.getAnnotation(BenchmarkStep.class).order());
+                val coalescedAfter = databaseService.getCounters().get(COALESCED_COUNTER);
+                if (Objects.nonNull(coalescedBefore) && Objects.nonNull(coalescedAfter)) {
+                    res.setCoalescedCnt(coalescedAfter - coalescedBefore);
+                }
+            }
+            return res;
+        } catch (TimeoutException e) {
+            log.warn("Task timeout, cancelling it", e);
+            future.cancel(true);
+            if (method.getReturnType().equals(Void.TYPE)) {
+                return null;
+            }
+            val res = new BenchmarkResult(-1L);
+            res.setId(method.getAnnotation(BenchmarkStep.class).order());
+            return res;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
     }
 }
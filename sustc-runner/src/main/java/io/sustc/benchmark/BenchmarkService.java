@@ -1,19 +1,16 @@
 package io.sustc.benchmark;
 
-import io.fury.ThreadSafeFury;
 import io.sustc.dto.*;
 import io.sustc.service.*;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 @Service
@@ -36,7 +33,10 @@ public class BenchmarkService {
     private ReviewService reviewService;
 
     @Autowired
-    private ThreadSafeFury fury;
+    private CaseReplayer replayer;
+
+    @Autowired
+    private CaseFileCache caseFiles;
 
 //    private final Map<Long, String> sentDanmu = new ConcurrentHashMap<>();
 //
@@ -44,7 +44,7 @@ public class BenchmarkService {
 //
 //    private final Set<Long> registeredUser = new ConcurrentSkipListSet<>();
 
-    @BenchmarkStep(order = 0, description = "Drop all the tables")
+    @BenchmarkStep(order = 0, repeatable = false, description = "Drop all the tables")
     public void drop() {
         if (!config.isStudentMode()) {
             return;
@@ -53,21 +53,21 @@ public class BenchmarkService {
         databaseService.drop();
     }
 
-    @BenchmarkStep(order = 1, timeout = 35, description = "Import data")
+    @BenchmarkStep(order = 1, timeout = 35, repeatable = false, description = "Import data")
     public BenchmarkResult importData() {
         List<ReviewRecord> reviewRecords = deserialize(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.REVIEW_RECORDS);
         List<UserRecord> userRecords = deserialize(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.USER_RECORDS);
         List<RecipeRecord> recipeRecords = deserialize(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.RECIPE_RECORDS);
 
-        val startTime = System.currentTimeMillis();
+        val startTime = System.nanoTime();
         try {
             databaseService.importData(reviewRecords, userRecords, recipeRecords);
         } catch (Exception e) {
             log.error("Exception encountered during importing data, you may early stop this run", e);
         }
-        val endTime = System.currentTimeMillis();
+        val endTime = System.nanoTime();
 
-        return new BenchmarkResult(endTime - startTime);
+        return new BenchmarkResult(endTime - startTime, TimeUnit.NANOSECONDS);
     }
 
     @BenchmarkStep(order = 2, description = "Test RecipeService#getRecipeNameFromID(Long)")
@@ -75,10 +75,9 @@ public class BenchmarkService {
         Map<Long, String> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.RECIPE_NAME);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.entrySet().forEach(it -> {
+        val stats = replayer.replay(cases.entrySet(), it -> {
             try { 
-                val res = recipeService.getNameFromID(it.getKey());
+                val res = replayer.timed(() -> recipeService.getNameFromID(it.getKey()));
                 if (Objects.equals(it.getValue(), res)) {
                     pass.incrementAndGet();
                 } else {
@@ -88,9 +87,8 @@ public class BenchmarkService {
                 log.error("Exception thrown for {}", it, e);
             }
         });
-        val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
     @BenchmarkStep(order = 3, description = "Test RecipeService#getRecipeById(long)")
@@ -98,10 +96,9 @@ public class BenchmarkService {
         Map<Long, RecipeRecord> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.RECIPE_RECORD_SINGLE);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.entrySet().forEach(it -> {
+        val stats = replayer.replay(cases.entrySet(), it -> {
             try {
-                val res = recipeService.getRecipeById(it.getKey());
+                val res = replayer.timed(() -> recipeService.getRecipeById(it.getKey()));
                 if (Objects.equals(it.getValue(), res)) {
                     pass.incrementAndGet();
                 } else {
@@ -117,9 +114,8 @@ public class BenchmarkService {
                 log.error("Exception thrown for {}", it, e);
             }
         });
-        val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
     @BenchmarkStep(order = 4, description = "Test RecipeService#searchRecipes(String, String, Double, Integer, Integer, String)")
@@ -127,11 +123,10 @@ public class BenchmarkService {
         List<Map.Entry<Object[], PageResult<RecipeRecord>>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.RECIPE_SEARCH);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.forEach(it -> {
+        val stats = replayer.replay(cases, it -> {
             try {
                 val args = it.getKey();
-                val res = recipeService.searchRecipes((String) args[0], (String) args[1], (Double) args[2], (Integer) args[3], (Integer) args[4], (String) args[5]);
+                val res = replayer.timed(() -> recipeService.searchRecipes((String) args[0], (String) args[1], (Double) args[2], (Integer) args[3], (Integer) args[4], (String) args[5]));
                 if (Objects.equals(it.getValue(), res)) {
                     pass.incrementAndGet();
                 } else {
@@ -148,23 +143,20 @@ public class BenchmarkService {
             }
         });
 
-        val endTime = System.currentTimeMillis();
-
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
-    @BenchmarkStep(order = 5, description = "Test RecipeService#createRecipe(RecipeRecord, AuthInfo)")
+    @BenchmarkStep(order = 5, mutating = true, description = "Test RecipeService#createRecipe(RecipeRecord, AuthInfo)")
     public BenchmarkResult createRecipeTest() {
         List<Map.Entry<Object[], Long>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.RECIPE_CREATE);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.forEach(it -> {
+        val stats = replayer.replay(cases, it -> {
             val args = it.getKey();
             val dto = (RecipeRecord) args[0];
             val auth = (AuthInfo) args[1];
             try {
-                val res = recipeService.createRecipe(dto, auth);
+                val res = replayer.timed(() -> recipeService.createRecipe(dto, auth));
                 if (Objects.equals(it.getValue(), res)) {
                     pass.incrementAndGet();
                 } else {
@@ -186,23 +178,21 @@ public class BenchmarkService {
                 log.error("Exception thrown for {}", it, e);
             }
         });
-        val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
-    @BenchmarkStep(order = 6, description = "Test RecipeService#deleteRecipe(long, AuthInfo)")
+    @BenchmarkStep(order = 6, mutating = true, description = "Test RecipeService#deleteRecipe(long, AuthInfo)")
     public BenchmarkResult deleteRecipeTest() {
         List<Map.Entry<Object[], Boolean>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.RECIPE_DELETE);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.forEach(it -> {
+        val stats = replayer.replay(cases, it -> {
             val args = it.getKey();
             val auth = (AuthInfo) args[1];
             val recipe = recipeService.getRecipeById((long) args[0]);
             try {
-                recipeService.deleteRecipe((long) args[0], auth);
+                replayer.timed(() -> recipeService.deleteRecipe((long) args[0], auth));
                 val res1 = recipeService.getRecipeById((long) args[0]);
                 if (Boolean.TRUE.equals(it.getValue()) && Objects.equals(res1, null)) {
                     pass.incrementAndGet();
@@ -219,23 +209,21 @@ public class BenchmarkService {
                 log.error("Exception thrown for {}", it.getKey(), e);
             }
         });
-        val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
-    @BenchmarkStep(order = 7, description = "Test RecipeService#updateTimes(AuthInfo, long, String, String)")
+    @BenchmarkStep(order = 7, mutating = true, description = "Test RecipeService#updateTimes(AuthInfo, long, String, String)")
     public BenchmarkResult updateTimesTest() {
         List<Map.Entry<Object[], String>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.RECIPE_UPDATE_TIMES);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.forEach(it -> {
+        val stats = replayer.replay(cases, it -> {
             val args = it.getKey();
             val before = recipeService.getRecipeById((long) args[1]);
             val auth = (AuthInfo) args[0];
             try {
-                recipeService.updateTimes(auth, (long) args[1], (String) args[2], (String) args[3]);
+                replayer.timed(() -> recipeService.updateTimes(auth, (long) args[1], (String) args[2], (String) args[3]));
                 val res = recipeService.getRecipeById((long) args[1]);
                 if (Objects.equals(it.getValue(), res.getTotalTime())) {
                     pass.incrementAndGet();
@@ -268,9 +256,8 @@ public class BenchmarkService {
                 }
             }
         });
-        val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
     @BenchmarkStep(order = 8, description = "Test RecipeService#getClosestCaloriePair()")
@@ -278,61 +265,61 @@ public class BenchmarkService {
         Map<String, Object> truth = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.RECIPE_CLOSEST_CALORIE_PAIR);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        val res = recipeService.getClosestCaloriePair();
-        boolean same =
-                truth.get("RecipeA").equals(res.get("RecipeA")) && truth.get("RecipeB").equals(res.get("RecipeB")) &&
-                        Objects.equals(truth.get("CaloriesA"), res.get("CaloriesA")) && Objects.equals(truth.get("CaloriesB"), res.get("CaloriesB")) && Objects.equals(truth.get("Difference"), res.get("Difference"));
-        if (same) {
-            pass.incrementAndGet();
-        } else {
-            log.debug("Wrong answer.");
-        }
-        val endTime = System.currentTimeMillis();
+        val stats = replayer.replay(Collections.singletonList(truth), it -> {
+            val res = replayer.timed(() -> recipeService.getClosestCaloriePair());
+            boolean same =
+                    it.get("RecipeA").equals(res.get("RecipeA")) && it.get("RecipeB").equals(res.get("RecipeB")) &&
+                            Objects.equals(it.get("CaloriesA"), res.get("CaloriesA")) && Objects.equals(it.get("CaloriesB"), res.get("CaloriesB")) && Objects.equals(it.get("Difference"), res.get("Difference"));
+            if (same) {
+                pass.incrementAndGet();
+            } else {
+                log.debug("Wrong answer.");
+            }
+        });
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
     @BenchmarkStep(order = 9, description = "Test RecipeService#getTop3MostComplexRecipesByIngredients()")
     public BenchmarkResult getTop3MostComplexRecipesByIngredientsTest() {
         List<Map<String, Object>> truth = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.RECIPE_TOP3);
         val pass = new AtomicLong();
-        val res = recipeService.getTop3MostComplexRecipesByIngredients();
-        val startTime = System.currentTimeMillis();
-        if (truth != null && res != null && truth.size() == res.size()) {
-            boolean allSame = true;
-            for (int i = 0; i < truth.size(); i++) {
-                Map<String, Object> t = truth.get(i);
-                Map<String, Object> r = res.get(i);
-                boolean same = Objects.equals(t.get("RecipeId"), r.get("RecipeId")) && Objects.equals(t.get("Name"), r.get("Name")) && Objects.equals(t.get("IngredientCount"), r.get("IngredientCount"));
-                if (!same) {
-                    allSame = false;
-                    break;
+
+        val stats = replayer.replay(Collections.singletonList(truth), it -> {
+            val res = replayer.timed(() -> recipeService.getTop3MostComplexRecipesByIngredients());
+            if (it != null && res != null && it.size() == res.size()) {
+                boolean allSame = true;
+                for (int i = 0; i < it.size(); i++) {
+                    Map<String, Object> t = it.get(i);
+                    Map<String, Object> r = res.get(i);
+                    boolean same = Objects.equals(t.get("RecipeId"), r.get("RecipeId")) && Objects.equals(t.get("Name"), r.get("Name")) && Objects.equals(t.get("IngredientCount"), r.get("IngredientCount"));
+                    if (!same) {
+                        allSame = false;
+                        break;
+                    }
                 }
-            }
-            if (allSame) {
-                pass.incrementAndGet();
-            } else  {
+                if (allSame) {
+                    pass.incrementAndGet();
+                } else  {
+                    log.debug("Wrong answer.");
+                }
+            } else {
                 log.debug("Wrong answer.");
             }
-        } else {
-            log.debug("Wrong answer.");
-        }
-        val endTime = System.currentTimeMillis();
+        });
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
-    @BenchmarkStep(order = 10, description = "Test ReviewService#addReview(AuthInfo, long, int, String)")
+    @BenchmarkStep(order = 10, mutating = true, description = "Test ReviewService#addReview(AuthInfo, long, int, String)")
     public BenchmarkResult addReviewTest() {
         List<Map.Entry<Object[], Object[]>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.REVIEW_ADD);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.forEach(it -> {
+        val stats = replayer.replay(cases, it -> {
             val args = it.getKey();
             try {
-                long res = reviewService.addReview((AuthInfo) args[0], (long) args[1], (int) args[2], (String) args[3]);
+                long res = replayer.timed(() -> reviewService.addReview((AuthInfo) args[0], (long) args[1], (int) args[2], (String) args[3]));
                 if (Objects.equals(it.getValue()[0], res)) {
                     // 检查recipe两个字段是否更新
                     if (Objects.equals(recipeService.getRecipeById((long) args[1]), it.getValue()[1])) {
@@ -357,21 +344,19 @@ public class BenchmarkService {
                 }
             }
         });
-        val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
-    @BenchmarkStep(order = 11, description = "Test ReviewService#editReview(AuthInfo, long, long, int, String)")
+    @BenchmarkStep(order = 11, mutating = true, description = "Test ReviewService#editReview(AuthInfo, long, long, int, String)")
     public BenchmarkResult editReviewTest() {
         List<Map.Entry<Object[], Object[]>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.REVIEW_EDIT);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.forEach(it -> {
+        val stats = replayer.replay(cases, it -> {
             val args = it.getKey();
             try {
-                reviewService.editReview((AuthInfo) args[0], (long) args[1], (long) args[2], (int) args[3], (String) args[4]);
+                replayer.timed(() -> reviewService.editReview((AuthInfo) args[0], (long) args[1], (long) args[2], (int) args[3], (String) args[4]));
                 if (Objects.equals(it.getValue()[0], "success")) {
                     // 检查recipe两个字段是否更新
                     if (Objects.equals(recipeService.getRecipeById((long) args[1]), it.getValue()[1])) {
@@ -396,21 +381,19 @@ public class BenchmarkService {
                 }
             }
         });
-        val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
-    @BenchmarkStep(order = 12, description = "Test ReviewService#deleteReview(AuthInfo, long, long)")
+    @BenchmarkStep(order = 12, mutating = true, description = "Test ReviewService#deleteReview(AuthInfo, long, long)")
     public BenchmarkResult deleteReviewTest() {
         List<Map.Entry<Object[], Object[]>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.REVIEW_DELETE);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.forEach(it -> {
+        val stats = replayer.replay(cases, it -> {
             val args = it.getKey();
             try {
-                reviewService.deleteReview((AuthInfo) args[0], (long) args[1], (long) args[2]);
+                replayer.timed(() -> reviewService.deleteReview((AuthInfo) args[0], (long) args[1], (long) args[2]));
                 if (Objects.equals(it.getValue()[0], "success")) {
                     // 检查recipe两个字段是否更新
                     if (Objects.equals(recipeService.getRecipeById((long) args[1]), it.getValue()[1])) {
@@ -435,22 +418,20 @@ public class BenchmarkService {
                 }
             }
         });
-        val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
-    @BenchmarkStep(order = 13, description = "Test ReviewService#likeReview(AuthInfo, long)")
+    @BenchmarkStep(order = 13, mutating = true, description = "Test ReviewService#likeReview(AuthInfo, long)")
     public BenchmarkResult likeReviewTest() {
         List<Map.Entry<Object[], Long>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.REVIEW_LIKE);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.forEach(it -> {
+        val stats = replayer.replay(cases, it -> {
             val args = it.getKey();
             long reviewId = (long) args[1];
             try {
-                val res = reviewService.likeReview((AuthInfo) args[0],  reviewId);
+                val res = replayer.timed(() -> reviewService.likeReview((AuthInfo) args[0], reviewId));
                 if (Objects.equals(it.getValue(), res)) {
                     pass.incrementAndGet();
                 } else {
@@ -470,21 +451,19 @@ public class BenchmarkService {
                 }
             }
         });
-        val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
-    @BenchmarkStep(order = 14, description = "Test ReviewService#unlikeReview(long, long)")
+    @BenchmarkStep(order = 14, mutating = true, description = "Test ReviewService#unlikeReview(long, long)")
     public BenchmarkResult unlikeReviewTest() {
         List<Map.Entry<Object[], Long>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.REVIEW_UNLIKE);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.forEach(it -> {
+        val stats = replayer.replay(cases, it -> {
             val args = it.getKey();
             try {
-                val res = reviewService.unlikeReview((AuthInfo) args[0], (long) args[1]);
+                val res = replayer.timed(() -> reviewService.unlikeReview((AuthInfo) args[0], (long) args[1]));
                 if (Objects.equals(it.getValue(), res)) {
                     pass.incrementAndGet();
                 } else {
@@ -504,9 +483,8 @@ public class BenchmarkService {
                 }
             }
         });
-        val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
     @BenchmarkStep(order = 15, description = "Test ReviewService#listByRecipe(long, int, int, String)")
@@ -514,11 +492,10 @@ public class BenchmarkService {
         List<Map.Entry<Object[], PageResult<ReviewRecord>>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.REVIEW_LIST);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.forEach(it -> {
+        val stats = replayer.replay(cases, it -> {
             val args = it.getKey();
             try {
-                val res = reviewService.listByRecipe((long) args[0], (int) args[1], (int) args[2], (String) args[3]);
+                val res = replayer.timed(() -> reviewService.listByRecipe((long) args[0], (int) args[1], (int) args[2], (String) args[3]));
                 if (Objects.equals(it.getValue(), res)) {
                     pass.incrementAndGet();
                 } else {
@@ -534,21 +511,19 @@ public class BenchmarkService {
                 log.error("Exception thrown for {}", it.getKey(), e);
             }
         });
-        val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
-    @BenchmarkStep(order = 16, description = "Test UserService#register(RegisterUserReq)")
+    @BenchmarkStep(order = 16, mutating = true, description = "Test UserService#register(RegisterUserReq)")
     public BenchmarkResult registerTest() {
         List<Map.Entry<RegisterUserReq, Long>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.USER_REGISTER);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.forEach(it -> {
+        val stats = replayer.replay(cases, it -> {
             val args = it.getKey();
             try {
-                val res = userService.register(args);
+                val res = replayer.timed(() -> userService.register(args));
                 if (Objects.equals(it.getValue(), res)) {
                     pass.incrementAndGet();
                 } else {
@@ -562,21 +537,19 @@ public class BenchmarkService {
                 }
             }
         });
-        val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
-    @BenchmarkStep(order = 17, description = "Test UserService#follow(AuthInfo, long)")
+    @BenchmarkStep(order = 17, mutating = true, description = "Test UserService#follow(AuthInfo, long)")
     public BenchmarkResult followTest() {
         List<Map.Entry<Object[], Boolean>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.USER_FOLLOW);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.forEach(it -> {
+        val stats = replayer.replay(cases, it -> {
             val args = it.getKey();
             try {
-                val res = userService.follow((AuthInfo) args[0], (long) args[1]);
+                val res = replayer.timed(() -> userService.follow((AuthInfo) args[0], (long) args[1]));
                 if (Objects.equals(it.getValue(), res)) {
                     pass.incrementAndGet();
                 } else {
@@ -586,21 +559,19 @@ public class BenchmarkService {
                 log.error("Exception thrown for args {}: {}", Arrays.toString(args), e.toString());
             }
         });
-        val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
-    @BenchmarkStep(order = 18, description = "Test UserService#deleteAccount(AuthInfo, long)")
+    @BenchmarkStep(order = 18, mutating = true, description = "Test UserService#deleteAccount(AuthInfo, long)")
     public BenchmarkResult deleteAccountTest() {
          List<Map.Entry<Object[], Boolean>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.USER_DELETE);
          val pass = new AtomicLong();
 
-         val startTime = System.currentTimeMillis();
-         cases.forEach(it -> {
+         val stats = replayer.replay(cases, it -> {
              val args = it.getKey();
              try {
-                 val res = userService.deleteAccount((AuthInfo) args[0], (long) args[1]);
+                 val res = replayer.timed(() -> userService.deleteAccount((AuthInfo) args[0], (long) args[1]));
                  if (Objects.equals(it.getValue(), res)) {
                      pass.incrementAndGet();
                  } else {
@@ -616,9 +587,8 @@ public class BenchmarkService {
                  log.error("Exception thrown for args {}: {}", Arrays.toString(args), e.toString());
              }
          });
-         val endTime = System.currentTimeMillis();
 
-         return new BenchmarkResult(pass, endTime - startTime);
+         return new BenchmarkResult(pass, stats);
     }
 
     @BenchmarkStep(order = 19, description = "Test UserService#getById(long)")
@@ -626,11 +596,10 @@ public class BenchmarkService {
         List<Map.Entry<Long, UserRecord>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.USER_GET_BY_ID);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.forEach(it -> {
+        val stats = replayer.replay(cases, it -> {
             try {
                 val expected = it.getValue();
-                val actual = userService.getById(it.getKey());
+                val actual = replayer.timed(() -> userService.getById(it.getKey()));
                 if (expected.getAuthorId() == actual.getAuthorId() &&
                         Objects.equals(expected.getAuthorName(), actual.getAuthorName()) &&
                         Objects.equals(expected.getGender(), actual.getGender()) &&
@@ -647,22 +616,20 @@ public class BenchmarkService {
                 log.error("Exception thrown for userId {}: {}", it.getKey(), e.toString());
             }
         });
-        val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
-    @BenchmarkStep(order = 20, description = "Test UserService#updateProfile(AuthInfo, String, Integer)")
+    @BenchmarkStep(order = 20, mutating = true, description = "Test UserService#updateProfile(AuthInfo, String, Integer)")
     public BenchmarkResult updateProfileTest() {
         List<Map.Entry<Object[], UserRecord>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.USER_UPDATE);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.forEach(it -> {
+        val stats = replayer.replay(cases, it -> {
             val args = it.getKey();
             val userId = (AuthInfo) args[0];
             try {
-                userService.updateProfile((AuthInfo) args[0], (String) args[1], (Integer) args[2]);
+                replayer.timed(() -> userService.updateProfile((AuthInfo) args[0], (String) args[1], (Integer) args[2]));
                 val actual = userService.getById(userId.getAuthorId());
                 val expected = it.getValue();
                 if (expected.getAuthorId() == actual.getAuthorId() &&
@@ -685,9 +652,8 @@ public class BenchmarkService {
                 }
             }
         });
-        val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
     @BenchmarkStep(order = 21, description = "Test UserService#login(AuthInfo)")
@@ -695,11 +661,10 @@ public class BenchmarkService {
         List<Map.Entry<AuthInfo, Long>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.USER_LOGIN);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.forEach(it -> {
+        val stats = replayer.replay(cases, it -> {
             val args = it.getKey();
             try {
-                val res = userService.login(args);
+                val res = replayer.timed(() -> userService.login(args));
                 if (Objects.equals(it.getValue(), res)) {
                     pass.incrementAndGet();
                 } else {
@@ -709,8 +674,8 @@ public class BenchmarkService {
                 log.error("Exception thrown for args {}: {}", args, e.toString());
             }
         });
-        val endTime = System.currentTimeMillis();
-        return new BenchmarkResult(pass, endTime - startTime);
+
+        return new BenchmarkResult(pass, stats);
     }
 
     @BenchmarkStep(order = 22, description = "Test UserService#feed(AuthInfo, int, int, String)")
@@ -718,11 +683,10 @@ public class BenchmarkService {
         List<Map.Entry<Object[], PageResult<FeedItem>>> cases = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.USER_FEED);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        cases.forEach(it -> {
+        val stats = replayer.replay(cases, it -> {
             val args = it.getKey();
             try {
-                val res = userService.feed((AuthInfo) args[0], (int) args[1], (int) args[2], (String) args[3]);
+                val res = replayer.timed(() -> userService.feed((AuthInfo) args[0], (int) args[1], (int) args[2], (String) args[3]));
                 if (Objects.equals(it.getValue(), res)) {
                     pass.incrementAndGet();
                 } else {
@@ -732,9 +696,8 @@ public class BenchmarkService {
                 log.error("Exception thrown for {}: {}", Arrays.toString(args), e.toString());
             }
         });
-        val endTime = System.currentTimeMillis();
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
     @BenchmarkStep(order = 23, description = "Test RecipeService#getUserWithHighestFollowRatio")
@@ -742,26 +705,23 @@ public class BenchmarkService {
         Map<String, Object> truth = deserialize(BenchmarkConstants.TEST_DATA, BenchmarkConstants.USER_HIGHEST_FOLLOW_RATIO);
         val pass = new AtomicLong();
 
-        val startTime = System.currentTimeMillis();
-        val res = userService.getUserWithHighestFollowRatio();
-        boolean same =
-                Objects.equals(truth.get("AuthorId"),   res.get("AuthorId")) &&
-                        Objects.equals(truth.get("AuthorName"), res.get("AuthorName")) && Math.abs((Double) truth.get("Ratio") - (Double) res.get("Ratio"))< 1e-9;
-        if (same) {
-            pass.incrementAndGet();
-        } else {
-            log.debug("Wrong answer.");
-        }
-        val endTime = System.currentTimeMillis();
+        val stats = replayer.replay(Collections.singletonList(truth), it -> {
+            val res = replayer.timed(() -> userService.getUserWithHighestFollowRatio());
+            boolean same =
+                    Objects.equals(it.get("AuthorId"),   res.get("AuthorId")) &&
+                            Objects.equals(it.get("AuthorName"), res.get("AuthorName")) && Math.abs((Double) it.get("Ratio") - (Double) res.get("Ratio"))< 1e-9;
+            if (same) {
+                pass.incrementAndGet();
+            } else {
+                log.debug("Wrong answer.");
+            }
+        });
 
-        return new BenchmarkResult(pass, endTime - startTime);
+        return new BenchmarkResult(pass, stats);
     }
 
-    @SneakyThrows
-    @SuppressWarnings("unchecked")
     private <T> T deserialize(String... path) {
-        val file = Paths.get(config.getDataPath(), path);
-        return (T) fury.deserialize(Files.readAllBytes(file));
+        return caseFiles.get(path);
     }
 
     private static boolean collectionEquals(Collection<?> expect, Collection<?> actual) {
@@ -23,4 +23,15 @@ public @interface BenchmarkStep {
      * Description of the task.
      */
     String description() default "";
+
+    /**
+     * Whether the task may run more than once, i.e., for warm-up and repeated iterations.
+     */
+    boolean repeatable() default true;
+
+    /**
+     * Whether the task modifies the database.
+     * The database is restored to its state before the task between repeated iterations.
+     */
+    boolean mutating() default false;
 }
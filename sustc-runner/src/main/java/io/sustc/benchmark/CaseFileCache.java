@@ -0,0 +1,121 @@
+package io.sustc.benchmark;
+
+import io.fury.ThreadSafeFury;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Deserializes the {@code .ser} files of the benchmark.
+ * <p>
+ * With {@link #preload()}, every file under the data path is memory-mapped and deserialized
+ * in parallel in the background, so that the steps find their cases already decoded
+ * and only wait if a file is not ready yet.
+ * A preloaded object is handed out once, since steps may modify the cases they get;
+ * requesting the same file again (e.g. when a step is repeated) decodes it anew.
+ * <p>
+ * Files in the {@link ChunkedSerFile chunked format} are fully decoded when preloaded,
+ * with their chunks in parallel, and decoded lazily otherwise.
+ */
+@Component
+@Slf4j
+public class CaseFileCache {
+
+    @Autowired
+    private BenchmarkConfig config;
+
+    @Autowired
+    private ThreadSafeFury fury;
+
+    private final Map<Path, CompletableFuture<Object>> preloaded = new ConcurrentHashMap<>();
+
+    /**
+     * Starts deserializing all case files in the background, and returns immediately.
+     */
+    public void preload() throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(Paths.get(config.getDataPath()))) {
+            files = walk.filter(Files::isRegularFile)
+                    .filter(file -> file.toString().endsWith(".ser"))
+                    .map(Path::toAbsolutePath)
+                    .collect(Collectors.toList());
+        }
+
+        val threadCnt = new AtomicInteger();
+        @SuppressWarnings("AlibabaThreadPoolCreation")
+        val executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            val thread = new Thread(runnable, "case-loader-" + threadCnt.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        val startTime = System.nanoTime();
+        val futures = files.stream()
+                .map(file -> {
+                    val future = CompletableFuture.supplyAsync(() -> load(file, true), executor);
+                    preloaded.put(file, future);
+                    return future;
+                })
+                .toArray(CompletableFuture[]::new);
+        // the queued loads still run, the pool just doesn't take new ones
+        executor.shutdown();
+
+        CompletableFuture.allOf(futures).whenComplete((ignored, e) -> {
+            if (e != null) {
+                log.warn("Failed to preload some case files, they will be reported by the steps using them", e);
+            } else {
+                log.info("Preloaded {} case files in {} ms", files.size(), (System.nanoTime() - startTime) / 1_000_000);
+            }
+        });
+    }
+
+    /**
+     * @param path the file path relative to the data path
+     * @return the deserialized content of the file
+     */
+    @SneakyThrows
+    @SuppressWarnings("unchecked")
+    public <T> T get(String... path) {
+        val file = Paths.get(config.getDataPath(), path).toAbsolutePath();
+        val future = preloaded.remove(file);
+        if (future == null) {
+            return (T) load(file, false);
+        }
+        try {
+            return (T) future.join();
+        } catch (CompletionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param eager whether a chunked file is decoded up front, instead of chunk by chunk on access
+     */
+    @SneakyThrows
+    private Object load(Path file, boolean eager) {
+        try (val channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            val buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (ChunkedSerFile.isChunked(buffer)) {
+                return eager ? ChunkedSerFile.readAll(fury, buffer) : ChunkedSerFile.open(fury, buffer);
+            }
+            return fury.deserialize(buffer);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package io.sustc.benchmark;
+
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Replays the test cases of a benchmark step and measures every single case
+ * with {@link System#nanoTime()} into an HdrHistogram.
+ * <p>
+ * A case measures the service call under test by wrapping it in {@link #timed}, so that the
+ * calls that check its result are left out. A case without one is measured as a whole.
+ * <p>
+ * By default the cases are applied one by one on the calling thread, in file order.
+ * When {@code benchmark.load.enabled} is set, a fixed number of workers pull the cases
+ * from a shared cursor and apply them concurrently (a closed-loop load generator).
+ */
+@Component
+@Slf4j
+public class CaseReplayer {
+
+    @Autowired
+    private BenchmarkConfig config;
+
+    /**
+     * 当前线程正在回放的用例中被测调用的耗时，-1 表示没有计时
+     */
+    private final ThreadLocal<long[]> callTime = ThreadLocal.withInitial(() -> new long[]{-1});
+
+    public <T> ReplayStats replay(Collection<T> cases, Consumer<T> body) {
+        val items = new ArrayList<T>(cases);
+        val latencies = new ConcurrentHistogram(3);
+        val errors = new AtomicLong();
+
+        val startTime = System.nanoTime();
+        if (config.getLoad().isEnabled()) {
+            replayConcurrently(items, body, latencies, errors);
+        } else {
+            for (val item : items) {
+                latencies.recordValue(applyCase(item, body, errors));
+            }
+        }
+        val endTime = System.nanoTime();
+
+        return new ReplayStats(items.size(), errors.get(), endTime - startTime, latencies);
+    }
+
+    /**
+     * Runs the service call under test of the current case and adds its time to the latency
+     * of the case.
+     */
+    public <R> R timed(Supplier<R> call) {
+        val startTime = System.nanoTime();
+        try {
+            return call.get();
+        } finally {
+            addCallTime(System.nanoTime() - startTime);
+        }
+    }
+
+    public void timed(Runnable call) {
+        val startTime = System.nanoTime();
+        try {
+            call.run();
+        } finally {
+            addCallTime(System.nanoTime() - startTime);
+        }
+    }
+
+    private void addCallTime(long nanos) {
+        val time = callTime.get();
+        time[0] = Math.max(time[0], 0) + nanos;
+    }
+
+    private <T> void replayConcurrently(List<T> items, Consumer<T> body, Histogram latencies, AtomicLong errors) {
+        val threads = Math.max(1, config.getLoad().getThreads());
+        val cursor = new AtomicInteger();
+        val executor = WorkerPools.newFixed(threads, config.getLoad().isVirtualThreads());
+        val workers = new ArrayList<Future<?>>(threads);
+        try {
+            for (int w = 0; w < threads; w++) {
+                workers.add(executor.submit(() -> {
+                    int i;
+                    while ((i = cursor.getAndIncrement()) < items.size() && !Thread.currentThread().isInterrupted()) {
+                        latencies.recordValue(applyCase(items.get(i), body, errors));
+                    }
+                }));
+            }
+            for (val worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            // the runner cancels a step on timeout, stop feeding cases to the workers
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Replay interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replay worker failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private <T> long applyCase(T item, Consumer<T> body, AtomicLong errors) {
+        val time = callTime.get();
+        time[0] = -1;
+        val startTime = System.nanoTime();
+        try {
+            body.accept(item);
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+            log.error("Exception escaped from case {}", item, e);
+        }
+        val caseTime = System.nanoTime() - startTime;
+        return time[0] >= 0 ? time[0] : caseTime;
+    }
+}
@@ -0,0 +1,227 @@
+package io.sustc.benchmark;
+
+import io.fury.ThreadSafeFury;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.val;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A {@code .ser} file holding a list as a sequence of independently serialized chunks,
+ * so that it can be written while the records are produced and read without decoding
+ * the whole list at once.
+ * <pre>
+ * file  := MAGIC chunk*
+ * chunk := count:int32 length:int32 bytes[length]   (bytes: a Fury-serialized ArrayList of count records)
+ * </pre>
+ * Files written by a single {@code fury.serialize(list)} call are still read as they are,
+ * since they can't start with {@link #MAGIC}.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class ChunkedSerFile {
+
+    private static final byte[] MAGIC = "SUSTC-CHUNKED-1\n".getBytes(StandardCharsets.US_ASCII);
+
+    public static boolean isChunked(ByteBuffer buffer) {
+        if (buffer.remaining() < MAGIC.length) {
+            return false;
+        }
+        val head = new byte[MAGIC.length];
+        buffer.duplicate().get(head);
+        return Arrays.equals(head, MAGIC);
+    }
+
+    public static <T> Writer<T> writer(ThreadSafeFury fury, Path file, int chunkSize) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        return new Writer<>(fury, new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file))), chunkSize);
+    }
+
+    /**
+     * @return a read-only list decoding its chunks on access, one chunk at a time
+     */
+    public static <T> List<T> open(ThreadSafeFury fury, ByteBuffer buffer) {
+        return new LazyList<>(fury, buffer);
+    }
+
+    /**
+     * @return all records of the file, with the chunks decoded in parallel
+     */
+    public static <T> List<T> readAll(ThreadSafeFury fury, ByteBuffer buffer) {
+        LazyList<T> lazy = new LazyList<>(fury, buffer);
+        val chunks = IntStream.range(0, lazy.chunkCnt())
+                .parallel()
+                .mapToObj(lazy::decode)
+                .collect(Collectors.toList());
+        val records = new ArrayList<T>(lazy.size());
+        for (val chunk : chunks) {
+            records.addAll(chunk);
+        }
+        return records;
+    }
+
+    public static class Writer<T> implements Closeable {
+
+        private final ThreadSafeFury fury;
+
+        private final DataOutputStream out;
+
+        private final List<T> chunk;
+
+        private final int chunkSize;
+
+        /**
+         * Number of records written so far.
+         */
+        @Getter
+        private long count;
+
+        private Writer(ThreadSafeFury fury, DataOutputStream out, int chunkSize) throws IOException {
+            this.fury = fury;
+            this.out = out;
+            this.chunkSize = chunkSize;
+            this.chunk = new ArrayList<>(chunkSize);
+            out.write(MAGIC);
+        }
+
+        public void add(T record) throws IOException {
+            chunk.add(record);
+            count++;
+            if (chunk.size() >= chunkSize) {
+                flushChunk();
+            }
+        }
+
+        private void flushChunk() throws IOException {
+            // an empty chunk is never written, the reader relies on it
+            if (chunk.isEmpty()) {
+                return;
+            }
+            val bytes = fury.serialize(chunk);
+            out.writeInt(chunk.size());
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            chunk.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flushChunk();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private static class LazyList<T> extends AbstractList<T> implements RandomAccess {
+
+        private final ThreadSafeFury fury;
+
+        private final ByteBuffer buffer;
+
+        /**
+         * Index of the first record of each chunk, plus the total size at the end.
+         */
+        private final int[] starts;
+
+        private final int[] offsets;
+
+        private final int[] lengths;
+
+        /**
+         * The last decoded chunk, replaced as a whole so that concurrent readers
+         * never see an index paired with another chunk's records.
+         */
+        private volatile DecodedChunk<T> current;
+
+        private LazyList(ThreadSafeFury fury, ByteBuffer buffer) {
+            this.fury = fury;
+            this.buffer = buffer.duplicate();
+            if (!isChunked(this.buffer)) {
+                throw new IllegalArgumentException("Not a chunked .ser file");
+            }
+
+            val starts = new ArrayList<Integer>();
+            val offsets = new ArrayList<Integer>();
+            val lengths = new ArrayList<Integer>();
+            int total = 0;
+            int position = MAGIC.length;
+            while (position < this.buffer.limit()) {
+                int count = this.buffer.getInt(position);
+                int length = this.buffer.getInt(position + Integer.BYTES);
+                starts.add(total);
+                offsets.add(position + 2 * Integer.BYTES);
+                lengths.add(length);
+                total += count;
+                position += 2 * Integer.BYTES + length;
+            }
+            starts.add(total);
+            this.starts = starts.stream().mapToInt(Integer::intValue).toArray();
+            this.offsets = offsets.stream().mapToInt(Integer::intValue).toArray();
+            this.lengths = lengths.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private int chunkCnt() {
+            return offsets.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<T> decode(int chunk) {
+            val slice = buffer.duplicate();
+            slice.position(offsets[chunk]).limit(offsets[chunk] + lengths[chunk]);
+            return (List<T>) fury.deserialize(slice.slice());
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+            }
+            DecodedChunk<T> decoded = current;
+            if (decoded == null || index < starts[decoded.chunk] || index >= starts[decoded.chunk + 1]) {
+                // chunks are never empty, so the starts are strictly increasing
+                int chunk = Arrays.binarySearch(starts, index);
+                chunk = chunk >= 0 ? chunk : -chunk - 2;
+                decoded = new DecodedChunk<>(chunk, decode(chunk));
+                current = decoded;
+            }
+            return decoded.records.get(index - starts[decoded.chunk]);
+        }
+
+        @Override
+        public int size() {
+            return starts[starts.length - 1];
+        }
+    }
+
+    private static class DecodedChunk<T> {
+
+        private final int chunk;
+
+        private final List<T> records;
+
+        private DecodedChunk(int chunk, List<T> records) {
+            this.chunk = chunk;
+            this.records = records;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package io.sustc.benchmark;
+
+import io.sustc.service.ConnectionRoles;
+import io.sustc.service.DatabaseService;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Copies every table of the {@code public} schema aside, so that a mutating step can be
+ * rerun against the same data.
+ * <p>
+ * The runner does not know the schema of the implementation under test, so the tables
+ * and their foreign keys are discovered from the catalog, and rows are restored in
+ * dependency order.
+ */
+@Component
+@Slf4j
+public class DatabaseSnapshot {
+
+    private static final String SNAPSHOT_SCHEMA = "benchmark_snapshot";
+
+    /**
+     * Copying whole tables is a bulk load, like an import.
+     */
+    @Autowired
+    @Qualifier(ConnectionRoles.IMPORT_JDBC_TEMPLATE)
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DatabaseService databaseService;
+
+    private List<String> tables = new ArrayList<>();
+
+    private Map<String, Long> sequences = new HashMap<>();
+
+    public void take() {
+        tables = tablesInDependencyOrder();
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + SNAPSHOT_SCHEMA + " CASCADE");
+        jdbcTemplate.execute("CREATE SCHEMA " + SNAPSHOT_SCHEMA);
+        for (val table : tables) {
+            jdbcTemplate.execute(String.format("CREATE TABLE %s.%s AS TABLE public.%s", SNAPSHOT_SCHEMA, table, table));
+        }
+        sequences = jdbcTemplate.query(
+                "SELECT quote_ident(sequencename) AS name, last_value FROM pg_sequences WHERE schemaname = 'public'",
+                rs -> {
+                    val values = new HashMap<String, Long>();
+                    while (rs.next()) {
+                        long lastValue = rs.getLong("last_value");
+                        values.put(rs.getString("name"), rs.wasNull() ? null : lastValue);
+                    }
+                    return values;
+                });
+        log.debug("Took snapshot of tables {}", tables);
+    }
+
+    public void restore() {
+        if (tables.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute(tables.stream()
+                .map(table -> "public." + table)
+                .collect(Collectors.joining(", ", "TRUNCATE ", " CASCADE")));
+        for (val table : tables) {
+            jdbcTemplate.execute(String.format(
+                    "INSERT INTO public.%s OVERRIDING SYSTEM VALUE SELECT * FROM %s.%s", table, SNAPSHOT_SCHEMA, table));
+        }
+        sequences.forEach((name, lastValue) -> {
+            if (lastValue == null) {
+                jdbcTemplate.queryForObject("SELECT setval(?::regclass, 1, false)", Long.class, "public." + name);
+            } else {
+                jdbcTemplate.queryForObject("SELECT setval(?::regclass, ?)", Long.class, "public." + name, lastValue);
+            }
+        });
+        // 恢复的数据不经过服务写入，缓存的统计结果可能已过期
+        databaseService.dataChanged();
+    }
+
+    public void discard() {
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + SNAPSHOT_SCHEMA + " CASCADE");
+        tables = new ArrayList<>();
+        sequences = new HashMap<>();
+    }
+
+    /**
+     * Lists the (top-level) tables of the public schema, referenced tables first.
+     */
+    private List<String> tablesInDependencyOrder() {
+        List<String> all = jdbcTemplate.queryForList(
+                "SELECT quote_ident(c.relname) FROM pg_class c JOIN pg_namespace n ON n.oid = c.relnamespace " +
+                        "WHERE n.nspname = 'public' AND c.relkind IN ('r', 'p') AND NOT c.relispartition " +
+                        "ORDER BY c.relname",
+                String.class);
+        val parents = new HashMap<String, Set<String>>();
+        jdbcTemplate.query(
+                "SELECT quote_ident(child.relname) AS child, quote_ident(parent.relname) AS parent " +
+                        "FROM pg_constraint con " +
+                        "JOIN pg_class child ON child.oid = con.conrelid " +
+                        "JOIN pg_class parent ON parent.oid = con.confrelid " +
+                        "JOIN pg_namespace n ON n.oid = child.relnamespace " +
+                        "WHERE con.contype = 'f' AND n.nspname = 'public'",
+                rs -> {
+                    val child = rs.getString("child");
+                    val parent = rs.getString("parent");
+                    if (!child.equals(parent)) {
+                        parents.computeIfAbsent(child, k -> new LinkedHashSet<>()).add(parent);
+                    }
+                });
+
+        val ordered = new LinkedHashSet<String>();
+        while (ordered.size() < all.size()) {
+            boolean progress = false;
+            for (val table : all) {
+                if (!ordered.contains(table) && ordered.containsAll(parents.getOrDefault(table, Collections.emptySet()))) {
+                    ordered.add(table);
+                    progress = true;
+                }
+            }
+            if (!progress) {
+                // a cycle of foreign keys, rows can't be restored table by table anyway
+                throw new IllegalStateException("Cyclic foreign keys between tables " + all);
+            }
+        }
+        return new ArrayList<>(ordered);
+    }
+}
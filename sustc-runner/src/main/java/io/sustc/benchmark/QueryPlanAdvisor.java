@@ -0,0 +1,303 @@
+package io.sustc.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs {@code EXPLAIN (ANALYZE, BUFFERS)} over the statements the services ran during a benchmark,
+ * as recorded by {@link StatementRecorder} with their parameters, and points out the scans and
+ * sorts an index could avoid.
+ * <p>
+ * {@code ANALYZE} executes the statement, so each run is rolled back afterwards, which makes it
+ * safe to explain the updates and deletes as well. The data may have changed since the recording,
+ * e.g. a recorded registration now finds its name taken, which changes the plan of such a call.
+ */
+@Component
+@Slf4j
+public class QueryPlanAdvisor {
+
+    /**
+     * Prefix of the files the recorded statements are saved to, next to the benchmark reports.
+     */
+    public static final String STATEMENTS_FILE_PREFIX = "statements-";
+
+    /**
+     * Scanning or sorting fewer rows than this is cheap either way, so it is not reported.
+     */
+    private static final long REPORT_ROWS = 1000;
+
+    private static final String QUERY_CANCELED = "57014";
+
+    /**
+     * A literal in a plan condition, such as {@code '42'::bigint}.
+     */
+    private static final Pattern CONSTANT = Pattern.compile("'(?:[^']|'')*'(?:::[\\w ]+?(?=[),]|$))?");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Saves the statements recorded by {@link StatementRecorder}, to be explained later.
+     */
+    public void save(List<StatementRecorder.RecordedStatement> statements, Path file) throws IOException {
+        objectMapper.writeValue(file.toFile(), statements);
+    }
+
+    public List<StatementRecorder.RecordedStatement> load(Path file) throws IOException {
+        return objectMapper.readValue(file.toFile(), new TypeReference<List<StatementRecorder.RecordedStatement>>() {
+        });
+    }
+
+    /**
+     * The statements file most recently saved in the directory, by its name.
+     *
+     * @throws IllegalArgumentException if there is none
+     */
+    public Path latestStatementsFile(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(STATEMENTS_FILE_PREFIX)
+                            && file.getFileName().toString().endsWith(".json"))
+                    .max(Comparator.comparing(Path::getFileName))
+                    .orElseThrow(() -> new IllegalArgumentException("No " + STATEMENTS_FILE_PREFIX + "*.json in "
+                            + directory.toAbsolutePath() + ", run the benchmark with benchmark.record-statements=true first"));
+        }
+    }
+
+    /**
+     * @param statements     the statements recorded during a benchmark
+     * @param samples        number of recorded parameters to explain each statement with
+     * @param filter         only the statements whose SQL contains a match are explained
+     * @param timeoutSeconds runs taking longer are cancelled, and the statement is explained without running it
+     */
+    public List<StatementReport> explain(List<StatementRecorder.RecordedStatement> statements, int samples,
+                                         Pattern filter, int timeoutSeconds) {
+        if (samples <= 0 || timeoutSeconds <= 0) {
+            throw new IllegalArgumentException("Samples and timeout must be positive");
+        }
+        val reports = new ArrayList<StatementReport>();
+        for (val statement : statements) {
+            if (filter.matcher(statement.getSql()).find()) {
+                reports.add(explain(statement, samples, timeoutSeconds));
+            }
+        }
+        return reports;
+    }
+
+    private StatementReport explain(StatementRecorder.RecordedStatement statement, int samples, int timeoutSeconds) {
+        List<Object[]> params = statement.getSamples().stream()
+                .limit(samples)
+                .map(sample -> sample.getParams().toArray())
+                .collect(Collectors.toList());
+        if (params.isEmpty()) {
+            params = Collections.singletonList(new Object[0]);
+        }
+
+        val report = new StatementReport(statement);
+        val transaction = new TransactionTemplate(transactionManager);
+        for (val args : params) {
+            try {
+                report.add(parse(transaction.execute(status -> {
+                    status.setRollbackOnly();
+                    jdbcTemplate.execute("SET LOCAL statement_timeout = " + timeoutSeconds * 1000L);
+                    return jdbcTemplate.queryForObject(
+                            "EXPLAIN (ANALYZE, BUFFERS, FORMAT JSON) " + statement.getSql(), String.class, args);
+                })));
+            } catch (DataAccessException e) {
+                if (!isCanceled(e)) {
+                    // 录制后数据已变化，例如插入的 ID 已存在，跳过这一组参数
+                    report.failed(e.getMostSpecificCause().getMessage());
+                    continue;
+                }
+                // 超时后只看估算的计划，其余样本也不再执行
+                report.timedOut(parse(jdbcTemplate.queryForObject(
+                        "EXPLAIN (FORMAT JSON) " + statement.getSql(), String.class, args)), timeoutSeconds);
+                break;
+            }
+        }
+        if (report.getRuns() == 0 && !report.isTimedOut()) {
+            // 每组参数都执行失败时，至少给出估算的计划
+            report.estimated(parse(jdbcTemplate.queryForObject(
+                    "EXPLAIN (FORMAT JSON) " + statement.getSql(), String.class, params.get(0))));
+        }
+        log.debug("Explained {} with {} samples", statement.getSql(), params.size());
+        return report;
+    }
+
+    private static boolean isCanceled(DataAccessException e) {
+        return e.getMostSpecificCause() instanceof SQLException
+                && QUERY_CANCELED.equals(((SQLException) e.getMostSpecificCause()).getSQLState());
+    }
+
+    @SneakyThrows
+    private JsonNode parse(String json) {
+        return objectMapper.readTree(json).get(0);
+    }
+
+    /**
+     * The plans of one statement over all of its samples.
+     */
+    @Getter
+    public static class StatementReport {
+
+        private final String sql;
+
+        /**
+         * Number of times the statement ran during the recorded benchmark.
+         */
+        private final long calls;
+
+        /**
+         * Time the statement took in total during the recorded benchmark.
+         */
+        private final double recordedMillis;
+
+        private int runs;
+
+        private double totalMillis;
+
+        private double maxMillis;
+
+        private long sharedHit;
+
+        private long sharedRead;
+
+        private boolean timedOut;
+
+        /**
+         * Number of samples whose run failed on the current data, e.g. inserting an id taken since.
+         */
+        private int failures;
+
+        private String lastFailure;
+
+        /**
+         * Whether no sample could run, so that the row counts are the planner's estimates.
+         */
+        private boolean estimated;
+
+        /**
+         * How each table was accessed, e.g. {@code Index Only Scan using idx_likes_review on review_likes}.
+         */
+        private final Set<String> accessPaths = new LinkedHashSet<>();
+
+        /**
+         * The sequential scans and sorts of at least 1000 rows, with the most rows seen over the samples.
+         * The constants in the filters are replaced by {@code ?}, so the samples share their findings.
+         */
+        private final Map<String, Long> findings = new LinkedHashMap<>();
+
+        private StatementReport(StatementRecorder.RecordedStatement statement) {
+            this.sql = statement.getSql();
+            this.calls = statement.getCalls();
+            this.recordedMillis = statement.getTotalNanos() / 1e6;
+        }
+
+        public double getAvgMillis() {
+            return runs == 0 ? 0 : totalMillis / runs;
+        }
+
+        private void add(JsonNode explained) {
+            double millis = explained.path("Execution Time").asDouble();
+            runs++;
+            totalMillis += millis;
+            maxMillis = Math.max(maxMillis, millis);
+            JsonNode plan = explained.path("Plan");
+            // 根节点的 buffers 已包含所有子节点
+            sharedHit += plan.path("Shared Hit Blocks").asLong();
+            sharedRead += plan.path("Shared Read Blocks").asLong();
+            visit(plan);
+        }
+
+        /**
+         * Records a plan without {@code ANALYZE}, whose row counts are the planner's estimates.
+         */
+        private void timedOut(JsonNode explained, int timeoutSeconds) {
+            timedOut = true;
+            maxMillis = Math.max(maxMillis, timeoutSeconds * 1000.0);
+            visit(explained.path("Plan"));
+        }
+
+        private void failed(String message) {
+            failures++;
+            lastFailure = message == null ? null : message.split("\\R", 2)[0];
+        }
+
+        private void estimated(JsonNode explained) {
+            estimated = true;
+            visit(explained.path("Plan"));
+        }
+
+        private void visit(JsonNode node) {
+            String type = node.path("Node Type").asText();
+            String relation = node.path("Relation Name").asText(null);
+
+            if (relation != null) {
+                String index = node.path("Index Name").asText(null);
+                accessPaths.add(index == null ? type + " on " + relation : type + " using " + index + " on " + relation);
+                if ("Seq Scan".equals(type)) {
+                    long scanned = (rows(node) + node.path("Rows Removed by Filter").asLong()) * loops(node);
+                    report("Seq Scan on " + relation
+                            + (node.has("Filter") ? ", filter " + withoutConstants(node.get("Filter").asText()) : ""), scanned);
+                }
+            }
+            if ("Sort".equals(type) || "Incremental Sort".equals(type)) {
+                JsonNode input = node.path("Plans").path(0);
+                val keys = new ArrayList<String>();
+                node.path("Sort Key").forEach(key -> keys.add(key.asText()));
+                report(type + " by " + String.join(", ", keys), rows(input) * loops(input));
+            }
+            node.path("Plans").forEach(this::visit);
+        }
+
+        private void report(String finding, long rows) {
+            if (rows >= REPORT_ROWS) {
+                findings.merge(finding, rows, Math::max);
+            }
+        }
+
+        private static long rows(JsonNode node) {
+            return node.has("Actual Rows") ? node.path("Actual Rows").asLong() : node.path("Plan Rows").asLong();
+        }
+
+        private static long loops(JsonNode node) {
+            return Math.max(1, node.path("Actual Loops").asLong());
+        }
+
+        private static String withoutConstants(String condition) {
+            return CONSTANT.matcher(condition).replaceAll("?");
+        }
+    }
+}
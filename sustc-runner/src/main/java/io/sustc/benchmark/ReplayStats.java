@@ -0,0 +1,80 @@
+package io.sustc.benchmark;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.HdrHistogram.Histogram;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measurements collected by {@link CaseReplayer} while replaying the cases of a step.
+ */
+@Getter
+@AllArgsConstructor
+public class ReplayStats {
+
+    /**
+     * Number of cases replayed.
+     */
+    private final long caseCnt;
+
+    /**
+     * Number of cases whose exception escaped from the step's own handling.
+     */
+    private final long errorCnt;
+
+    /**
+     * Wall time of the whole replay in nanoseconds.
+     */
+    private final long elapsedNanos;
+
+    /**
+     * Latency of every single case in nanoseconds.
+     */
+    private final Histogram latencies;
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    /**
+     * @return replayed cases per second
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : caseCnt * 1e9 / elapsedNanos;
+    }
+
+    public BenchmarkResult.Latency summarize() {
+        if (latencies.getTotalCount() == 0) {
+            return null;
+        }
+        return new BenchmarkResult.Latency(
+                latencies.getTotalCount(),
+                latencies.getMean() / 1e3,
+                toMicros(latencies.getValueAtPercentile(50)),
+                toMicros(latencies.getValueAtPercentile(95)),
+                toMicros(latencies.getValueAtPercentile(99)),
+                toMicros(latencies.getValueAtPercentile(99.9)),
+                toMicros(latencies.getMaxValue()),
+                encode(latencies)
+        );
+    }
+
+    /**
+     * Encodes the histogram in HdrHistogram's compressed format, as Base64.
+     * It can be decoded with {@code Histogram.decodeFromCompressedByteBuffer}
+     * to compare full distributions across runs.
+     */
+    private static String encode(Histogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int size = histogram.encodeIntoCompressedByteBuffer(buffer);
+        return Base64.getEncoder().encodeToString(Arrays.copyOf(buffer.array(), size));
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,262 @@
+package io.sustc.benchmark;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import io.sustc.service.ConnectionRoles;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Records the SQL statements the services run, with the parameters of their first calls,
+ * so that {@link QueryPlanAdvisor} explains the statements as they are actually run.
+ * <p>
+ * Every data source except the import pool is wrapped, and hands out recording connections
+ * between {@link #start()} and {@link #stop()}, plain ones otherwise. Only single statements
+ * that {@code EXPLAIN} accepts are recorded, batches are left out.
+ * <p>
+ * Only defined for a benchmark run with {@code benchmark.record-statements=true}, so that the
+ * data sources are left as they are otherwise.
+ */
+@Component
+@Profile("benchmark")
+@ConditionalOnProperty(name = "benchmark.record-statements", havingValue = "true")
+@Slf4j
+public class StatementRecorder implements BeanPostProcessor {
+
+    /**
+     * Parameters kept of each statement, the calls after them are only counted.
+     */
+    private static final int MAX_SAMPLES = 20;
+
+    private static final Pattern EXPLAINABLE = Pattern.compile("^\\s*\\(*\\s*(SELECT|WITH|INSERT|UPDATE|DELETE|VALUES)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private volatile boolean recording;
+
+    private final ConcurrentHashMap<String, RecordedStatement> statements = new ConcurrentHashMap<>();
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource && !(bean instanceof RecordingDataSource)
+                && !ConnectionRoles.IMPORT_DATA_SOURCE.equals(beanName)) {
+            return new RecordingDataSource((DataSource) bean);
+        }
+        return bean;
+    }
+
+    /**
+     * Starts recording, after forgetting the statements recorded so far.
+     */
+    public void start() {
+        statements.clear();
+        recording = true;
+    }
+
+    public void stop() {
+        recording = false;
+        log.debug("Recorded {} statements", statements.size());
+    }
+
+    /**
+     * The statements recorded so far, the ones taking the most time first.
+     */
+    public List<RecordedStatement> getStatements() {
+        return statements.values().stream()
+                .map(RecordedStatement::copy)
+                .sorted(Comparator.comparingLong(RecordedStatement::getTotalNanos).reversed())
+                .collect(Collectors.toList());
+    }
+
+    private void record(String sql, Object[] params, long nanos) {
+        if (!EXPLAINABLE.matcher(sql).find()) {
+            return;
+        }
+        statements.computeIfAbsent(sql, RecordedStatement::new).add(params, nanos);
+    }
+
+    /**
+     * A statement with the number of times it ran and the parameters of its first calls.
+     */
+    @Data
+    public static class RecordedStatement {
+
+        private String sql;
+
+        private long calls;
+
+        /**
+         * Time spent executing the statement, not counting the fetch of the rows
+         * the driver did not read at once.
+         */
+        private long totalNanos;
+
+        private List<Sample> samples = new ArrayList<>();
+
+        public RecordedStatement() {
+        }
+
+        private RecordedStatement(String sql) {
+            this.sql = sql;
+        }
+
+        private synchronized void add(Object[] params, long nanos) {
+            calls++;
+            totalNanos += nanos;
+            if (samples.size() < MAX_SAMPLES) {
+                samples.add(new Sample(Arrays.asList(params)));
+            }
+        }
+
+        private synchronized RecordedStatement copy() {
+            RecordedStatement copy = new RecordedStatement(sql);
+            copy.calls = calls;
+            copy.totalNanos = totalNanos;
+            copy.samples = new ArrayList<>(samples);
+            return copy;
+        }
+    }
+
+    /**
+     * The parameters of one call, with their classes when saved as JSON so that they are
+     * bound with the same types when explained.
+     */
+    @Data
+    public static class Sample {
+
+        @JsonTypeInfo(use = JsonTypeInfo.Id.CLASS)
+        private List<Object> params;
+
+        public Sample() {
+        }
+
+        Sample(List<Object> params) {
+            this.params = params;
+        }
+    }
+
+    private class RecordingDataSource extends DelegatingDataSource implements Closeable {
+
+        RecordingDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection connection = super.getConnection();
+            return recording ? recordingConnection(connection) : connection;
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            Connection connection = super.getConnection(username, password);
+            return recording ? recordingConnection(connection) : connection;
+        }
+
+        /**
+         * The pool is closed with the context, through the wrapper.
+         */
+        @Override
+        public void close() throws IOException {
+            if (getTargetDataSource() instanceof Closeable) {
+                ((Closeable) getTargetDataSource()).close();
+            }
+        }
+    }
+
+    private Connection recordingConnection(Connection target) {
+        return proxy(Connection.class, target, (method, args) -> {
+            Object result = invoke(target, method, args);
+            if (method.getName().equals("prepareStatement") && args[0] instanceof String) {
+                return recordingStatement((PreparedStatement) result, (String) args[0]);
+            }
+            if (method.getName().equals("createStatement")) {
+                return recordingStatement((Statement) result);
+            }
+            return result;
+        });
+    }
+
+    private PreparedStatement recordingStatement(PreparedStatement target, String sql) {
+        List<Object> params = new ArrayList<>();
+        return proxy(PreparedStatement.class, target, (method, args) -> {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                int index = (Integer) args[0];
+                while (params.size() < index) {
+                    params.add(null);
+                }
+                params.set(index - 1, name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                params.clear();
+            } else if ((args == null || args.length == 0) && name.startsWith("execute") && !name.endsWith("Batch")) {
+                long start = System.nanoTime();
+                Object result = invoke(target, method, args);
+                record(sql, params.toArray(), System.nanoTime() - start);
+                return result;
+            }
+            return invoke(target, method, args);
+        });
+    }
+
+    private Statement recordingStatement(Statement target) {
+        return proxy(Statement.class, target, (method, args) -> {
+            if (method.getName().startsWith("execute") && args != null && args.length >= 1 && args[0] instanceof String) {
+                long start = System.nanoTime();
+                Object result = invoke(target, method, args);
+                record((String) args[0], new Object[0], System.nanoTime() - start);
+                return result;
+            }
+            return invoke(target, method, args);
+        });
+    }
+
+    private interface Handler {
+
+        Object handle(Method method, Object[] args) throws Throwable;
+    }
+
+    private static <T> T proxy(Class<T> type, T target, Handler handler) {
+        Object proxy = Proxy.newProxyInstance(StatementRecorder.class.getClassLoader(), new Class<?>[]{type},
+                (self, method, args) -> {
+                    // Spring 比较连接是否相同时用 equals，代理只与自身相等，哈希值也要与之一致
+                    if (method.getName().equals("equals") && args != null && args.length == 1) {
+                        return self == args[0];
+                    }
+                    if (method.getName().equals("hashCode") && args == null) {
+                        return System.identityHashCode(self);
+                    }
+                    return handler.handle(method, args);
+                });
+        return type.cast(proxy);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.sustc.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the threads that call the services, either platform threads or virtual threads (Java 21+),
+ * and sizes the connection pool they draw from.
+ * <p>
+ * The runner also builds and runs on JDKs older than 21, so virtual threads are created through
+ * reflection. Asking for them where they are not available fails, rather than quietly measuring
+ * platform threads instead.
+ * <p>
+ * The PostgreSQL driver before 42.6 holds a monitor while it waits for the server, which pins
+ * a virtual thread to its carrier for the whole query ({@code -Djdk.tracePinnedThreads=short}
+ * shows it), so the calls would get at most as many carriers as there are cores. The build sets
+ * {@code postgresql.version} above the version Spring Boot 2.7 chooses for this reason.
+ */
+@Slf4j
+public final class WorkerPools {
+
+    private WorkerPools() {
+    }
+
+    /**
+     * A pool of {@code threads} platform threads, or a new virtual thread per task.
+     * Either way, the caller decides the concurrency by the number of tasks it submits.
+     *
+     * @throws IllegalStateException if {@code virtual} and virtual threads are not available
+     */
+    @SuppressWarnings("AlibabaThreadPoolCreation")
+    public static ExecutorService newFixed(int threads, boolean virtual) {
+        return virtual ? newVirtual() : Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * A pool creating platform threads as needed, or a new virtual thread per task.
+     *
+     * @throws IllegalStateException if {@code virtual} and virtual threads are not available
+     */
+    @SuppressWarnings("AlibabaThreadPoolCreation")
+    public static ExecutorService newCached(boolean virtual) {
+        return virtual ? newVirtual() : Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Sets the maximum size of the connection pool, independently of the number of threads
+     * calling the services. Virtual threads are cheap, so their number says nothing about the
+     * number of connections the database can serve.
+     *
+     * @param size the new maximum size, or 0 to keep the configured one
+     * @return the previous size, to give to {@link #restoreConnectionPool}, or {@code null}
+     * if the pool was not resized
+     */
+    public static PoolSize resizeConnectionPool(DataSource dataSource, int size) {
+        if (size <= 0) {
+            return null;
+        }
+        HikariDataSource hikari = hikari(dataSource);
+        if (hikari == null) {
+            log.warn("The data source is not a Hikari pool, keeping its size");
+            return null;
+        }
+        PoolSize previous = new PoolSize(hikari.getMaximumPoolSize(), hikari.getMinimumIdle());
+        // 最小空闲连接数默认等于最大连接数，缩小时一起调整
+        if (previous.getMinimumIdle() > size) {
+            hikari.getHikariConfigMXBean().setMinimumIdle(size);
+        }
+        hikari.getHikariConfigMXBean().setMaximumPoolSize(size);
+        log.info("Connection pool resized from {} to {}", previous.getMaximumPoolSize(), size);
+        return previous;
+    }
+
+    /**
+     * Gives the pool back the size it had before {@link #resizeConnectionPool}.
+     *
+     * @param previous the size returned by {@link #resizeConnectionPool}, {@code null} for none
+     */
+    public static void restoreConnectionPool(DataSource dataSource, PoolSize previous) {
+        if (previous == null) {
+            return;
+        }
+        HikariDataSource hikari = hikari(dataSource);
+        // 先恢复最大连接数，最小空闲连接数不能超过它
+        hikari.getHikariConfigMXBean().setMaximumPoolSize(previous.getMaximumPoolSize());
+        hikari.getHikariConfigMXBean().setMinimumIdle(previous.getMinimumIdle());
+        log.info("Connection pool restored to {}", previous.getMaximumPoolSize());
+    }
+
+    private static HikariDataSource hikari(DataSource dataSource) {
+        try {
+            return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to unwrap the connection pool", e);
+        }
+    }
+
+    /**
+     * The sizes of a connection pool that {@link #resizeConnectionPool} changes.
+     */
+    @Value
+    public static class PoolSize {
+
+        int maximumPoolSize;
+
+        int minimumIdle;
+    }
+
+    private static ExecutorService newVirtual() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not available on this JVM (Java "
+                    + System.getProperty("java.specification.version") + "), they require Java 21+ (-Pruntime.jdk=21)", e);
+        }
+    }
+}
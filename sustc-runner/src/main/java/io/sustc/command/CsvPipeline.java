@@ -0,0 +1,157 @@
+package io.sustc.command;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvException;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+/**
+ * Parses a csv file into records in a pipeline.
+ * <p>
+ * A reader thread splits the csv records into batches, the batches are parsed in parallel
+ * on a shared pool, and the calling thread hands the parsed records to a sink in the order
+ * they were read. The number of batches in flight is bounded, so a slow sink holds back
+ * the reader instead of letting parsed records pile up.
+ */
+@Slf4j
+class CsvPipeline {
+
+    private static final int BATCH_SIZE = 512;
+
+    /**
+     * Marks the end of the batches, compared by identity.
+     */
+    private static final CompletableFuture<List<Object>> END = CompletableFuture.completedFuture(null);
+
+    private final ExecutorService parsers;
+
+    private final int maxInFlight;
+
+    CsvPipeline(ExecutorService parsers, int parallelism) {
+        this.parsers = parsers;
+        this.maxInFlight = 2 * Math.max(1, parallelism);
+    }
+
+    interface RecordSink<T> {
+        void accept(T record) throws IOException;
+    }
+
+    /**
+     * Parses every row but the header of a csv file.
+     * The reader is closed when done.
+     *
+     * @param parser converts a row to a record, or returns null to skip the row
+     */
+    @SuppressWarnings("unchecked")
+    <T> Stats run(String name, CSVReader reader, Function<String[], T> parser, RecordSink<? super T> sink)
+            throws IOException, CsvException {
+        BlockingQueue<CompletableFuture<List<Object>>> batches = new ArrayBlockingQueue<>(maxInFlight);
+        val startTime = System.nanoTime();
+
+        val readerThread = new Thread(() -> {
+            try (CSVReader csv = reader) {
+                // 跳过标题行
+                csv.readNext();
+                List<String[]> batch = new ArrayList<>(BATCH_SIZE);
+                String[] fields;
+                while ((fields = csv.readNext()) != null) {
+                    batch.add(fields);
+                    if (batch.size() == BATCH_SIZE) {
+                        batches.put(parse(batch, (Function<String[], Object>) parser));
+                        batch = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    batches.put(parse(batch, (Function<String[], Object>) parser));
+                }
+                batches.put(END);
+            } catch (InterruptedException e) {
+                // the writer has given up
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                val failed = new CompletableFuture<List<Object>>();
+                failed.completeExceptionally(e);
+                try {
+                    batches.put(failed);
+                } catch (InterruptedException ignored) {
+                    log.error("Failed to read {}", name, e);
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "csv-reader-" + name);
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        long rows = 0;
+        try {
+            CompletableFuture<List<Object>> next;
+            while ((next = batches.take()) != END) {
+                for (val record : next.join()) {
+                    sink.accept((T) record);
+                    rows++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while converting " + name, e);
+        } catch (CompletionException e) {
+            val cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof CsvException) {
+                throw (CsvException) cause;
+            }
+            throw e;
+        } finally {
+            readerThread.interrupt();
+        }
+        return new Stats(name, rows, System.nanoTime() - startTime);
+    }
+
+    private CompletableFuture<List<Object>> parse(List<String[]> batch, Function<String[], Object> parser) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<Object> records = new ArrayList<>(batch.size());
+            for (val fields : batch) {
+                val record = parser.apply(fields);
+                if (record != null) {
+                    records.add(record);
+                }
+            }
+            return records;
+        }, parsers);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class Stats {
+
+        private final String name;
+
+        private final long rows;
+
+        private final long elapsedNanos;
+
+        double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d rows in %d ms (%.0f rows/s)",
+                    name, rows, elapsedNanos / 1_000_000, getRowsPerSecond());
+        }
+    }
+}
@@ -6,7 +6,12 @@ import io.fury.ThreadSafeFury;
 import io.sustc.benchmark.BenchmarkConfig;
 import io.sustc.benchmark.BenchmarkConstants;
 import io.sustc.benchmark.BenchmarkService;
+import io.sustc.benchmark.CaseFileCache;
+import io.sustc.benchmark.ChunkedSerFile;
+import io.sustc.benchmark.QueryPlanAdvisor;
 import io.sustc.dto.*;
+import io.sustc.importer.ColumnarSnapshot;
+import io.sustc.importer.ValidatedImport;
 import io.sustc.service.DatabaseService;
 import io.sustc.service.RecipeService;
 import io.sustc.service.ReviewService;
@@ -22,19 +27,29 @@ import com.opencsv.CSVReader;
 import com.opencsv.exceptions.CsvException;
 
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import java.sql.Timestamp;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 
 //在Spring Shell应用中Java类需要使用注解@ShellComponent来修饰，
@@ -44,6 +59,20 @@ import java.util.List;
 @ConditionalOnBean(DatabaseService.class)
 public class DatabaseCommand {
 
+    // 预编译，避免每行都重新编译正则
+    private static final Pattern QUOTED_ITEM = Pattern.compile("\"([^\"]*)\"");
+
+    private static final Pattern LIST_SEPARATOR = Pattern.compile("\\s*,\\s*");
+
+    // DateTimeFormatter 线程安全，可以在并行解析中共用
+    private static final DateTimeFormatter[] TIMESTAMP_FORMATS = {
+            DateTimeFormatter.ofPattern("y-M-d H:m:s"),
+            DateTimeFormatter.ofPattern("y-M-d'T'H:m:s"),
+            DateTimeFormatter.ofPattern("y-M-d"),
+            DateTimeFormatter.ofPattern("M/d/y H:m:s"),
+            DateTimeFormatter.ofPattern("M/d/y"),
+    };
+
     @Autowired
     private DatabaseService databaseService;
 
@@ -65,17 +94,33 @@ public class DatabaseCommand {
     @Autowired
     private BenchmarkConfig config;
 
+    @Autowired
+    private CaseFileCache caseFiles;
+
+    @Autowired
+    private QueryPlanAdvisor queryPlanAdvisor;
+
     @ShellMethod(key = "db groupmember", value = "List group members")
     public List<Integer> listGroupMembers() {
         return databaseService.getGroupMembers();
     }
 
     @ShellMethod(key = "db import", value = "Drop all the tables. Then import data from csv")
-    public void importData() {
+    public void importData(
+            @ShellOption(defaultValue = "false", help = "Commit each chunk separately, and resume an interrupted import") boolean resumable,
+            @ShellOption(value = "--chunk-size", defaultValue = "50000", help = "Rows per transaction of a resumable import") int chunkSize) {
         long startTime = System.currentTimeMillis();
 
-        databaseService.drop();
-        benchmarkService.importData();
+        if (resumable) {
+            // 不删除表，以便从上次提交的分块继续
+            List<UserRecord> users = caseFiles.get(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.USER_RECORDS);
+            List<RecipeRecord> recipes = caseFiles.get(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.RECIPE_RECORDS);
+            List<ReviewRecord> reviews = caseFiles.get(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.REVIEW_RECORDS);
+            databaseService.importDataResumable(reviews, users, recipes, chunkSize);
+        } else {
+            databaseService.drop();
+            benchmarkService.importData();
+        }
 
         long endTime = System.currentTimeMillis();
         long duration = endTime - startTime;
@@ -83,6 +128,87 @@ public class DatabaseCommand {
         System.out.println("importData time: " + duration + " ms");
     }
 
+    @ShellMethod(key = "db reimport", value = "Replace the data with the import data, keeping the old data readable meanwhile")
+    public void reimportData(
+            @ShellOption(defaultValue = "false", help = "Make the new tables logged before swapping them in") boolean logged) {
+        long startTime = System.currentTimeMillis();
+
+        List<UserRecord> users = caseFiles.get(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.USER_RECORDS);
+        List<RecipeRecord> recipes = caseFiles.get(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.RECIPE_RECORDS);
+        List<ReviewRecord> reviews = caseFiles.get(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.REVIEW_RECORDS);
+        databaseService.reimportData(reviews, users, recipes, logged);
+
+        System.out.println("reimportData time: " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    @ShellMethod(key = "db ser2snap", value = "Generate a columnar snapshot from the import .ser files")
+    public void ser2snap(
+            @ShellOption(defaultValue = "data/import/snapshot.bin", help = "Path of the snapshot file") String output)
+            throws IOException {
+        long startTime = System.currentTimeMillis();
+
+        List<UserRecord> users = caseFiles.get(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.USER_RECORDS);
+        List<RecipeRecord> recipes = caseFiles.get(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.RECIPE_RECORDS);
+        List<ReviewRecord> reviews = caseFiles.get(BenchmarkConstants.IMPORT_DATA, BenchmarkConstants.REVIEW_RECORDS);
+        ValidatedImport data = ValidatedImport.of(users, recipes, reviews, false);
+        System.out.println("Validated: " + data);
+        Path file = Paths.get(output);
+        ColumnarSnapshot.write(file, data.getUsers(), data.getRecipes(), data.getReviews());
+
+        System.out.println("ser2snap time: " + (System.currentTimeMillis() - startTime) + " ms, "
+                + Files.size(file) + " bytes written to " + file.toAbsolutePath());
+    }
+
+    @ShellMethod(key = "db importsnap", value = "Drop all the tables. Then import data from a columnar snapshot")
+    public void importSnapshot(
+            @ShellOption(defaultValue = "data/import/snapshot.bin", help = "Path of the snapshot file") String input) {
+        long startTime = System.currentTimeMillis();
+
+        databaseService.drop();
+        databaseService.importSnapshot(Paths.get(input));
+
+        System.out.println("importSnapshot time: " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    @ShellMethod(key = "db advise", value = "Explain the statements recorded during a benchmark and report the scans and sorts an index could avoid")
+    public void advise(
+            @ShellOption(defaultValue = "", help = "Recorded statements file, by default the latest one in the report path") String statements,
+            @ShellOption(defaultValue = "3", help = "Recorded parameters per statement") int samples,
+            @ShellOption(defaultValue = "", help = "Only the statements whose SQL matches this regex") String filter,
+            @ShellOption(defaultValue = "30", help = "Seconds before a statement is only explained without running it") int timeout) throws IOException {
+        Path file = statements.isEmpty()
+                ? queryPlanAdvisor.latestStatementsFile(Paths.get(Objects.toString(config.getReportPath(), "")).toAbsolutePath())
+                : Paths.get(statements);
+        System.out.println("Statements recorded in " + file);
+        List<QueryPlanAdvisor.StatementReport> reports = queryPlanAdvisor.explain(
+                queryPlanAdvisor.load(file), samples, Pattern.compile(filter), timeout);
+
+        int flagged = 0;
+        for (QueryPlanAdvisor.StatementReport report : reports) {
+            System.out.printf("%8d calls  %10.1f ms recorded  %4d runs  avg %9.3f ms  max %9.3f ms  buffers hit %d read %d%n",
+                    report.getCalls(), report.getRecordedMillis(), report.getRuns(), report.getAvgMillis(),
+                    report.getMaxMillis(), report.getSharedHit(), report.getSharedRead());
+            System.out.println("  " + report.getSql());
+            if (report.isTimedOut()) {
+                System.out.println("  ! timed out, row counts are estimates");
+            }
+            if (report.getFailures() > 0) {
+                System.out.println("  ! " + report.getFailures() + " runs failed on the current data: " + report.getLastFailure());
+            }
+            if (report.isEstimated()) {
+                System.out.println("  ! no run succeeded, row counts are estimates");
+            }
+            for (String path : report.getAccessPaths()) {
+                System.out.println("    " + path);
+            }
+            report.getFindings().forEach((finding, rows) -> System.out.println("  ! " + finding + ": " + rows + " rows"));
+            if (!report.getFindings().isEmpty()) {
+                flagged++;
+            }
+        }
+        System.out.println(flagged + " of " + reports.size() + " statements scan or sort at least 1000 rows");
+    }
+
     @ShellMethod(key = "db drop", value = "Drop all the tables")
     public void drop() {
         databaseService.drop();
@@ -94,32 +220,79 @@ public class DatabaseCommand {
     }
 
     @ShellMethod(key = "db csv2ser", value = "Generate .ser files from .csv files")
-    public void csv2ser() {
+    public void csv2ser(
+            @ShellOption(value = "--chunk-size", defaultValue = "10000", help = "Records per chunk of the .ser files") int chunkSize,
+            @ShellOption(defaultValue = "false", help = "Write each file as a single list, readable by older runners") boolean legacy) {
+        // 获取项目根目录
+        String projectRoot = System.getProperty("user.dir");
+        System.out.println("projectRoot:" + projectRoot);
+
+        // 三个文件同时转换，共用一个解析线程池
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool parsers = new ForkJoinPool(parallelism);
+        @SuppressWarnings("AlibabaThreadPoolCreation")
+        ExecutorService files = Executors.newFixedThreadPool(3);
+        CsvPipeline pipeline = new CsvPipeline(parsers, parallelism);
         try {
-            // 获取项目根目录
-            String projectRoot = System.getProperty("user.dir");
-            System.out.println("projectRoot:" + projectRoot);
-
-            List<UserRecord> users = loadUsers(projectRoot + "/data/csv/users.csv");
-            List<RecipeRecord> recipes = loadRecipes(projectRoot + "/data/csv/recipes.csv");
-            List<ReviewRecord> reviews = loadReviews(projectRoot + "/data/csv/reviews.csv");
-
-            // 序列化数据
-            serializeData(users, projectRoot + "/data/import/users.ser");
-            serializeData(recipes, projectRoot + "/data/import/recipes.ser");
-            serializeData(reviews, projectRoot + "/data/import/reviews.ser");
-
+            long startTime = System.nanoTime();
+            List<Future<CsvPipeline.Stats>> results = Arrays.asList(
+                    files.submit(() -> convert(pipeline, "users", openCsv(projectRoot + "/data/csv/users.csv", false),
+                            DatabaseCommand::parseUser, Paths.get(projectRoot, "data", "import", "users.ser"), chunkSize, legacy)),
+                    files.submit(() -> convert(pipeline, "recipes", openCsv(projectRoot + "/data/csv/recipes.csv", true),
+                            DatabaseCommand::parseRecipe, Paths.get(projectRoot, "data", "import", "recipes.ser"), chunkSize, legacy)),
+                    files.submit(() -> convert(pipeline, "reviews", openCsv(projectRoot + "/data/csv/reviews.csv", false),
+                            DatabaseCommand::parseReview, Paths.get(projectRoot, "data", "import", "reviews.ser"), chunkSize, legacy))
+            );
+
+            long rows = 0;
+            for (Future<CsvPipeline.Stats> result : results) {
+                try {
+                    CsvPipeline.Stats stats = result.get();
+                    rows += stats.getRows();
+                    System.out.println(stats);
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                }
+            }
+            long elapsed = System.nanoTime() - startTime;
             System.out.println("Data loading and serialization have been completed!");
-            System.out.println("user count: " + users.size());
-            System.out.println("recipe count: " + recipes.size());
-            System.out.println("review count: " + reviews.size());
+            System.out.printf("total: %d rows in %d ms (%.0f rows/s)%n", rows, elapsed / 1_000_000, rows * 1e9 / elapsed);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            files.shutdownNow();
+            parsers.shutdownNow();
+        }
+    }
+
+    /**
+     * Converts a csv file to a .ser file, chunked or as a single list.
+     */
+    private <T> CsvPipeline.Stats convert(CsvPipeline pipeline, String name, CSVReader reader,
+                                          Function<String[], T> parser, Path output, int chunkSize, boolean legacy)
+            throws IOException, CsvException {
+        if (legacy) {
+            List<T> records = new ArrayList<>();
+            CsvPipeline.Stats stats = pipeline.run(name, reader, parser, records::add);
+            serializeData(records, output.toString());
+            return stats;
+        }
+        // 分块写出，内存中最多只保留一个块的记录
+        try (ChunkedSerFile.Writer<T> writer = ChunkedSerFile.writer(fury, output, chunkSize)) {
+            return pipeline.run(name, reader, parser, writer::add);
+        }
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
+    // recipes.csv 中的字段含有反斜杠，需要使用 RFC4180Parser
+    private static CSVReader openCsv(String filePath, boolean rfc4180) throws IOException {
+        CSVReaderBuilder builder = new CSVReaderBuilder(Files.newBufferedReader(Paths.get(filePath)));
+        if (rfc4180) {
+            builder.withCSVParser(new RFC4180ParserBuilder().build());
         }
+        return builder.build();
     }
 
-    private static String[] parseCsvList(String listStr) {
+    static String[] parseCsvList(String listStr) {
         if (listStr == null || listStr.trim().isEmpty() || "null".equalsIgnoreCase(listStr.trim())) {
             return new String[0];
         }
@@ -132,8 +305,7 @@ public class DatabaseCommand {
             String content = trimmed.substring(2, trimmed.length() - 1).trim();
 
             // 使用更简单的正则表达式匹配所有引号内的内容
-            Pattern pattern = Pattern.compile("\"([^\"]*)\"");
-            Matcher matcher = pattern.matcher(content);
+            Matcher matcher = QUOTED_ITEM.matcher(content);
 
             List<String> items = new ArrayList<>();
             while (matcher.find()) {
@@ -146,21 +318,21 @@ public class DatabaseCommand {
             }
 
             // 如果没有找到引号内容，尝试按逗号分割括号内的内容
-            return Arrays.stream(content.split("\\s*,\\s*"))
+            return Arrays.stream(LIST_SEPARATOR.split(content))
                     .map(String::trim)
                     .filter(s -> !s.isEmpty())
                     .toArray(String[]::new);
         }
 
         // 如果不是 c(...) 格式，尝试直接按逗号分割
-        return Arrays.stream(trimmed.split("\\s*,\\s*"))
+        return Arrays.stream(LIST_SEPARATOR.split(trimmed))
                 .map(String::trim)
                 .filter(s -> !s.isEmpty())
                 .toArray(String[]::new);
     }
 
     // 辅助方法：解析("123", "456")格式的字符串为long数组
-    private static long[] parseCsvLongList(String listStr) {
+    static long[] parseCsvLongList(String listStr) {
         // 处理空值或空字符串
         if (listStr == null || listStr.trim().isEmpty() || "null".equalsIgnoreCase(listStr.trim())) {
             return new long[0];
@@ -178,7 +350,7 @@ public class DatabaseCommand {
         }
 
         // 使用逗号分割字符串，并去除每个部分的前后空格
-        String[] stringArray = trimmedStr.split("\\s*,\\s*");
+        String[] stringArray = LIST_SEPARATOR.split(trimmedStr);
         long[] longArray = new long[stringArray.length];
 
         for (int i = 0; i < stringArray.length; i++) {
@@ -193,20 +365,21 @@ public class DatabaseCommand {
     }
 
     // 辅助方法：解析时间戳
-    private static Timestamp parseTimestamp(String timestampStr) {
+    static Timestamp parseTimestamp(String timestampStr) {
         if (timestampStr == null || timestampStr.trim().isEmpty() || "null".equalsIgnoreCase(timestampStr.trim())) {
             return null;
         }
 
-        // 尝试多种日期格式
-        String[] dateFormats = {"yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd'T'HH:mm:ss", "yyyy-MM-dd", "MM/dd/yyyy HH:mm:ss", "MM/dd/yyyy"};
-
-        for (String format : dateFormats) {
+        // 尝试多种日期格式，和 SimpleDateFormat#parse 一样只要求前缀匹配（忽略结尾的 Z 等），按本地时区解释
+        String text = timestampStr.trim();
+        for (DateTimeFormatter format : TIMESTAMP_FORMATS) {
             try {
-                SimpleDateFormat sdf = new SimpleDateFormat(format);
-                Date date = sdf.parse(timestampStr.trim());
-                return new Timestamp(date.getTime());
-            } catch (ParseException e) {
+                TemporalAccessor parsed = format.parse(text, new ParsePosition(0));
+                LocalTime time = parsed.query(TemporalQueries.localTime());
+                return Timestamp.valueOf(LocalDateTime.of(
+                        parsed.query(TemporalQueries.localDate()),
+                        time != null ? time : LocalTime.MIDNIGHT));
+            } catch (DateTimeException e) {
                 // 尝试下一种格式
             }
         }
@@ -255,107 +428,100 @@ public class DatabaseCommand {
 
     // 加载用户数据
     public static List<UserRecord> loadUsers(String filePath) throws IOException, CsvException {
-        List<UserRecord> users = new ArrayList<>();
-
-        try (CSVReader reader = new CSVReader(new FileReader(filePath))) {
-            List<String[]> records = reader.readAll();
-
-            // 跳过标题行
-            for (int i = 1; i < records.size(); i++) {
-                String[] fields = records.get(i);
-
-                if (fields.length >= 9) {
-                    UserRecord user = UserRecord.builder().authorId(parseLong(fields[0])).authorName(fields[1] != null ? fields[1].trim() : "").gender(fields[2] != null ? fields[2].trim() : "").age(parseInt(fields[3])).
-                            followers(parseInt(fields[4])).
-                            following(parseInt(fields[5])).
-                            followerUsers(parseCsvLongList(fields[6])).
-                            followingUsers(parseCsvLongList(fields[7])).
-                            password(fields[8] != null ? fields[8].trim() : "").build();
-
-                    users.add(user);
-                }
-            }
-        }
-
-        return users;
+        return loadAll(openCsv(filePath, false), DatabaseCommand::parseUser);
     }
 
     //加载食谱数据
     public static List<RecipeRecord> loadRecipes(String filePath) throws IOException, CsvException {
-        List<RecipeRecord> recipes = new ArrayList<>();
+        return loadAll(openCsv(filePath, true), DatabaseCommand::parseRecipe);
+    }
 
-        // 使用 RFC4180Parser 创建 CSVReader
-        try (CSVReader reader = new CSVReaderBuilder(new FileReader(filePath))
-                .withCSVParser(new RFC4180ParserBuilder().build())
-                .build()) {
+    // 加载评论数据
+    public static List<ReviewRecord> loadReviews(String filePath) throws IOException, CsvException {
+        return loadAll(openCsv(filePath, false), DatabaseCommand::parseReview);
+    }
 
-            List<String[]> records = reader.readAll();
+    private static <T> List<T> loadAll(CSVReader reader, Function<String[], T> parser) throws IOException, CsvException {
+        List<T> records = new ArrayList<>();
 
+        try (CSVReader csv = reader) {
             // 跳过标题行
-            for (int i = 1; i < records.size(); i++) {
-                String[] fields = records.get(i);
-
-                if (fields.length >= 24) {
-                    RecipeRecord recipe = RecipeRecord.builder()
-                            .RecipeId(parseLong(fields[0]))
-                            .name(fields[1] != null ? fields[1].trim() : "")
-                            .authorId(parseLong(fields[2]))
-                            .authorName(fields[3] != null ? fields[3].trim() : "")
-                            .cookTime(fields[4] != null ? fields[4].trim() : "")
-                            .prepTime(fields[5] != null ? fields[5].trim() : "")
-                            .totalTime(fields[6] != null ? fields[6].trim() : "")
-                            .datePublished(parseTimestamp(fields[7]))
-                            .description(fields[8] != null ? fields[8].trim() : "")
-                            .recipeCategory(fields[9] != null ? fields[9].trim() : "")
-                            .recipeIngredientParts(parseCsvList(fields[10]))
-                            .aggregatedRating(parseFloat(fields[11]))
-                            .reviewCount((int)parseFloat(fields[12]))
-                            .calories(parseFloat(fields[13]))
-                            .fatContent(parseFloat(fields[14]))
-                            .saturatedFatContent(parseFloat(fields[15]))
-                            .cholesterolContent(parseFloat(fields[16]))
-                            .sodiumContent(parseFloat(fields[17]))
-                            .carbohydrateContent(parseFloat(fields[18]))
-                            .fiberContent(parseFloat(fields[19]))
-                            .sugarContent(parseFloat(fields[20]))
-                            .proteinContent(parseFloat(fields[21]))
-                            .recipeServings((int)parseFloat(fields[22]))
-                            .recipeYield(fields[23] != null ? fields[23].trim() : "")
-                            .build();
-
-                    recipes.add(recipe);
+            csv.readNext();
+            String[] fields;
+            while ((fields = csv.readNext()) != null) {
+                T record = parser.apply(fields);
+                if (record != null) {
+                    records.add(record);
                 }
             }
         }
 
-        return recipes;
+        return records;
     }
 
-    // 加载评论数据
-    public static List<ReviewRecord> loadReviews(String filePath) throws IOException, CsvException {
-        List<ReviewRecord> reviews = new ArrayList<>();
-
-        try (CSVReader reader = new CSVReader(new FileReader(filePath))) {
-            List<String[]> records = reader.readAll();
+    /**
+     * @return the user in a row of users.csv, or null if the row is incomplete
+     */
+    static UserRecord parseUser(String[] fields) {
+        if (fields.length < 9) {
+            return null;
+        }
+        return UserRecord.builder().authorId(parseLong(fields[0])).authorName(fields[1] != null ? fields[1].trim() : "").gender(fields[2] != null ? fields[2].trim() : "").age(parseInt(fields[3])).
+                followers(parseInt(fields[4])).
+                following(parseInt(fields[5])).
+                followerUsers(parseCsvLongList(fields[6])).
+                followingUsers(parseCsvLongList(fields[7])).
+                password(fields[8] != null ? fields[8].trim() : "").build();
+    }
 
-            // 跳过标题行
-            for (int i = 1; i < records.size(); i++) {
-                String[] fields = records.get(i);
-
-                if (fields.length >= 9) {
-                    ReviewRecord review = ReviewRecord.builder().reviewId(parseLong(fields[0])).
-                            recipeId(parseLong(fields[1])).authorId(parseLong(fields[2])).
-                            authorName(fields[3] != null ? fields[3].trim() : "").
-                            rating(parseFloat(fields[4])).review(fields[5] != null ? fields[5].trim() : "").
-                            dateSubmitted(parseTimestamp(fields[6])).dateModified(parseTimestamp(fields[7])).
-                            likes(parseCsvLongList(fields[8])).build();
-
-                    reviews.add(review);
-                }
-            }
+    /**
+     * @return the recipe in a row of recipes.csv, or null if the row is incomplete
+     */
+    static RecipeRecord parseRecipe(String[] fields) {
+        if (fields.length < 24) {
+            return null;
         }
+        return RecipeRecord.builder()
+                .RecipeId(parseLong(fields[0]))
+                .name(fields[1] != null ? fields[1].trim() : "")
+                .authorId(parseLong(fields[2]))
+                .authorName(fields[3] != null ? fields[3].trim() : "")
+                .cookTime(fields[4] != null ? fields[4].trim() : "")
+                .prepTime(fields[5] != null ? fields[5].trim() : "")
+                .totalTime(fields[6] != null ? fields[6].trim() : "")
+                .datePublished(parseTimestamp(fields[7]))
+                .description(fields[8] != null ? fields[8].trim() : "")
+                .recipeCategory(fields[9] != null ? fields[9].trim() : "")
+                .recipeIngredientParts(parseCsvList(fields[10]))
+                .aggregatedRating(parseFloat(fields[11]))
+                .reviewCount((int)parseFloat(fields[12]))
+                .calories(parseFloat(fields[13]))
+                .fatContent(parseFloat(fields[14]))
+                .saturatedFatContent(parseFloat(fields[15]))
+                .cholesterolContent(parseFloat(fields[16]))
+                .sodiumContent(parseFloat(fields[17]))
+                .carbohydrateContent(parseFloat(fields[18]))
+                .fiberContent(parseFloat(fields[19]))
+                .sugarContent(parseFloat(fields[20]))
+                .proteinContent(parseFloat(fields[21]))
+                .recipeServings((int)parseFloat(fields[22]))
+                .recipeYield(fields[23] != null ? fields[23].trim() : "")
+                .build();
+    }
 
-        return reviews;
+    /**
+     * @return the review in a row of reviews.csv, or null if the row is incomplete
+     */
+    static ReviewRecord parseReview(String[] fields) {
+        if (fields.length < 9) {
+            return null;
+        }
+        return ReviewRecord.builder().reviewId(parseLong(fields[0])).
+                recipeId(parseLong(fields[1])).authorId(parseLong(fields[2])).
+                authorName(fields[3] != null ? fields[3].trim() : "").
+                rating(parseFloat(fields[4])).review(fields[5] != null ? fields[5].trim() : "").
+                dateSubmitted(parseTimestamp(fields[6])).dateModified(parseTimestamp(fields[7])).
+                likes(parseCsvLongList(fields[8])).build();
     }
 
     @SneakyThrows
@@ -0,0 +1,817 @@
+package io.sustc.command;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.sustc.benchmark.DatabaseSnapshot;
+import io.sustc.benchmark.WorkerPools;
+import io.sustc.dto.AuthInfo;
+import io.sustc.dto.RecipeRecord;
+import io.sustc.dto.RegisterUserReq;
+import io.sustc.service.ConnectionRoles;
+import io.sustc.service.DatabaseService;
+import io.sustc.service.RecipeService;
+import io.sustc.service.ReviewService;
+import io.sustc.service.UserService;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Concurrency checks of the services: many threads call a service at once, then the results
+ * and the database are checked against what a serial execution would give.
+ * <p>
+ * The data is restored from a {@link DatabaseSnapshot} afterwards, unless asked to keep it.
+ */
+@Slf4j
+@ShellComponent
+public class StressCommand {
+
+    /**
+     * The counter of {@link DatabaseService#getCounters} with the calls that shared the query of
+     * another call, missing if single-flight is disabled.
+     */
+    private static final String COALESCED_COUNTER = "singleFlight.coalesced";
+
+    private static final String HITS_COUNTER = "analyticsCache.hits";
+
+    private static final String MISSES_COUNTER = "analyticsCache.misses";
+
+    private static final String CALORIE_INDEX_COUNTER = "caloriePairIndex.calls";
+
+    @Autowired
+    private DatabaseService databaseService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private RecipeService recipeService;
+
+    @Autowired
+    private ReviewService reviewService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    @Qualifier(ConnectionRoles.ANALYTICS_JDBC_TEMPLATE)
+    private JdbcTemplate analyticsJdbcTemplate;
+
+    @Autowired
+    private DatabaseSnapshot databaseSnapshot;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    @Qualifier(ConnectionRoles.ANALYTICS_DATA_SOURCE)
+    private DataSource analyticsDataSource;
+
+    @ShellMethod(key = "stress register", value = "Register the same names from many threads at once")
+    public String stressRegister(
+            @ShellOption(defaultValue = "16", help = "Number of threads") int threads,
+            @ShellOption(defaultValue = "1000", help = "Number of distinct names") int names,
+            @ShellOption(value = "--tries", defaultValue = "4", help = "Registrations of each name") int tries,
+            @ShellOption(defaultValue = "false", help = "Keep the registered users") boolean keep) {
+        if (threads <= 0 || names <= 0 || tries <= 0) {
+            throw new IllegalArgumentException("Threads, names and tries must be positive");
+        }
+        String prefix = "stress " + System.currentTimeMillis() + " ";
+        val requests = new ArrayList<String>(names * tries);
+        for (int i = 0; i < names; i++) {
+            for (int j = 0; j < tries; j++) {
+                requests.add(prefix + i);
+            }
+        }
+        // 打乱顺序，让同名的注册落在不同线程上
+        Collections.shuffle(requests);
+
+        return withSnapshot(keep, () -> {
+            val registered = new ConcurrentHashMap<String, Queue<Long>>();
+            val rejected = new AtomicInteger();
+            val errors = new ConcurrentLinkedQueue<Throwable>();
+            long elapsed = runConcurrently(threads, requests, name -> {
+                RegisterUserReq req = new RegisterUserReq();
+                req.setName(name);
+                req.setPassword("password");
+                req.setGender(RegisterUserReq.Gender.UNKNOWN);
+                req.setBirthday("2000-01-01");
+                try {
+                    long id = userService.register(req);
+                    if (id == -1) {
+                        rejected.incrementAndGet();
+                    } else {
+                        registered.computeIfAbsent(name, key -> new ConcurrentLinkedQueue<>()).add(id);
+                    }
+                } catch (RuntimeException e) {
+                    errors.add(e);
+                }
+            });
+
+            val problems = new ArrayList<String>();
+            val ids = new HashSet<Long>();
+            for (val entry : registered.entrySet()) {
+                if (entry.getValue().size() != 1) {
+                    problems.add(entry.getKey() + " was registered " + entry.getValue().size() + " times: " + entry.getValue());
+                }
+                for (val id : entry.getValue()) {
+                    if (!ids.add(id)) {
+                        problems.add("id " + id + " was returned more than once");
+                    }
+                }
+            }
+            if (registered.size() != names) {
+                problems.add((names - registered.size()) + " names were never registered");
+            }
+            // 数据库中每个名字恰好一行，且 ID 与 register 的返回值一致
+            Map<String, Long> stored = new HashMap<>();
+            jdbcTemplate.query("SELECT name, id FROM users WHERE name LIKE ?",
+                    rs -> {
+                        Long previous = stored.put(rs.getString("name"), rs.getLong("id"));
+                        if (previous != null) {
+                            problems.add(rs.getString("name") + " is stored more than once");
+                        }
+                    }, prefix + "%");
+            for (val entry : registered.entrySet()) {
+                Long id = stored.get(entry.getKey());
+                if (id == null || !entry.getValue().contains(id)) {
+                    problems.add(entry.getKey() + " is stored with id " + id + ", but register returned " + entry.getValue());
+                }
+            }
+            for (val error : errors) {
+                log.error("register failed", error);
+            }
+
+            return report(String.format("%d registrations from %d threads in %d ms: %d registered, %d rejected as taken, %d errors",
+                    requests.size(), threads, elapsed, registered.size(), rejected.get(), errors.size()), problems);
+        });
+    }
+
+    @ShellMethod(key = "stress follow", value = "Toggle the same follows from many threads at once")
+    public String stressFollow(
+            @ShellOption(defaultValue = "16", help = "Number of threads") int threads,
+            @ShellOption(defaultValue = "200", help = "Number of (follower, followee) pairs") int pairs,
+            @ShellOption(value = "--toggles", defaultValue = "15", help = "Toggles of each pair") int toggles,
+            @ShellOption(defaultValue = "false", help = "Keep the resulting follows") boolean keep) {
+        if (threads <= 0 || pairs <= 0 || toggles <= 0) {
+            throw new IllegalArgumentException("Threads, pairs and toggles must be positive");
+        }
+        val pairList = jdbcTemplate.query(
+                "SELECT a.id, b.id FROM users a, users b " +
+                        "WHERE a.id <> b.id AND a.is_deleted = FALSE ORDER BY random() LIMIT ?",
+                (rs, rowNum) -> new long[]{rs.getLong(1), rs.getLong(2)}, pairs);
+        val requests = new ArrayList<long[]>(pairList.size() * toggles);
+        for (val pair : pairList) {
+            for (int j = 0; j < toggles; j++) {
+                requests.add(pair);
+            }
+        }
+        Collections.shuffle(requests);
+
+        return withSnapshot(keep, () -> {
+            val initial = new HashMap<String, Boolean>();
+            for (val pair : pairList) {
+                initial.put(pair[0] + "->" + pair[1], isFollowing(pair[0], pair[1]));
+            }
+            // 每次切换的返回值：true 表示切换后为关注
+            val followed = new ConcurrentHashMap<String, AtomicInteger>();
+            val errors = new ConcurrentLinkedQueue<Throwable>();
+            long elapsed = runConcurrently(threads, requests, pair -> {
+                AuthInfo auth = AuthInfo.builder().authorId(pair[0]).build();
+                try {
+                    boolean following = userService.follow(auth, pair[1]);
+                    followed.computeIfAbsent(pair[0] + "->" + pair[1], key -> new AtomicInteger())
+                            .addAndGet(following ? 1 : 0);
+                } catch (RuntimeException e) {
+                    errors.add(e);
+                }
+            });
+
+            // 串行执行时，切换奇数次后状态翻转，且返回 true 的次数由初始状态决定
+            val problems = new ArrayList<String>();
+            for (val pair : pairList) {
+                String key = pair[0] + "->" + pair[1];
+                boolean before = initial.get(key);
+                boolean expected = (toggles % 2 == 1) != before;
+                boolean actual = isFollowing(pair[0], pair[1]);
+                if (actual != expected) {
+                    problems.add(key + " ends " + (actual ? "followed" : "not followed") + " after " + toggles + " toggles");
+                }
+                int expectedTrue = before ? toggles / 2 : (toggles + 1) / 2;
+                int actualTrue = followed.containsKey(key) ? followed.get(key).get() : 0;
+                if (errors.isEmpty() && actualTrue != expectedTrue) {
+                    problems.add(key + " returned true " + actualTrue + " times, expected " + expectedTrue);
+                }
+            }
+            for (val error : errors) {
+                log.error("follow failed", error);
+            }
+
+            return report(String.format("%d toggles of %d pairs from %d threads in %d ms: %d errors",
+                    requests.size(), pairList.size(), threads, elapsed, errors.size()), problems);
+        });
+    }
+
+    @ShellMethod(key = "stress like", value = "Like and unlike one review from many threads at once")
+    public String stressLike(
+            @ShellOption(defaultValue = "16", help = "Number of threads") int threads,
+            @ShellOption(defaultValue = "1000", help = "Number of users liking the review") int users,
+            @ShellOption(value = "--tries", defaultValue = "3", help = "Likes and unlikes by each user") int tries,
+            @ShellOption(defaultValue = "-1", help = "Review to like, or -1 for a random one") long review,
+            @ShellOption(defaultValue = "false", help = "Keep the resulting likes") boolean keep) {
+        if (threads <= 0 || users <= 0 || tries <= 0) {
+            throw new IllegalArgumentException("Threads, users and tries must be positive");
+        }
+        long reviewId = review >= 0 ? review : jdbcTemplate.queryForObject(
+                "SELECT id FROM reviews ORDER BY random() LIMIT 1", Long.class);
+        val likers = jdbcTemplate.queryForList(
+                "SELECT u.id FROM users u, reviews r WHERE r.id = ? AND u.id <> r.author_id " +
+                        "AND u.is_deleted = FALSE ORDER BY random() LIMIT ?", Long.class, reviewId, users);
+        // 一半的用户点赞后再取消
+        val unlikers = likers.subList(0, likers.size() / 2);
+
+        return withSnapshot(keep, () -> {
+            val problems = new ArrayList<String>();
+            val errors = new ConcurrentLinkedQueue<Throwable>();
+            val initial = new HashSet<Long>(jdbcTemplate.queryForList(
+                    "SELECT user_id FROM review_likes WHERE review_id = ?", Long.class, reviewId));
+            val liked = new HashSet<Long>(initial);
+            liked.addAll(likers);
+
+            long likeTime = runConcurrently(threads, repeat(likers, tries), userId ->
+                    checkLikeCount(problems, errors, initial.size(), liked.size(),
+                            () -> reviewService.likeReview(AuthInfo.builder().authorId(userId).build(), reviewId)));
+            checkStoredLikes(problems, reviewId, liked, "after the likes");
+
+            val remaining = new HashSet<Long>(liked);
+            remaining.removeAll(unlikers);
+            long unlikeTime = runConcurrently(threads, repeat(unlikers, tries), userId ->
+                    checkLikeCount(problems, errors, remaining.size(), liked.size(),
+                            () -> reviewService.unlikeReview(AuthInfo.builder().authorId(userId).build(), reviewId)));
+            checkStoredLikes(problems, reviewId, remaining, "after the unlikes");
+
+            for (val error : errors) {
+                log.error("like failed", error);
+            }
+            return report(String.format("review %d: %d likes from %d threads in %d ms, %d unlikes in %d ms, %d errors",
+                    reviewId, likers.size() * tries, threads, likeTime, unlikers.size() * tries, unlikeTime, errors.size()),
+                    problems);
+        });
+    }
+
+    @ShellMethod(key = "stress coalesce", value = "Read a few hot recipes and review pages from many threads at once")
+    public String stressCoalesce(
+            @ShellOption(defaultValue = "32", help = "Number of threads") int threads,
+            @ShellOption(defaultValue = "20000", help = "Number of calls") int calls,
+            @ShellOption(defaultValue = "5", help = "Number of hot recipes") int hot) {
+        if (threads <= 0 || calls <= 0 || hot <= 0) {
+            throw new IllegalArgumentException("Threads, calls and hot must be positive");
+        }
+        // 评论最多的食谱，其评论页最慢
+        val recipeIds = jdbcTemplate.queryForList(
+                "SELECT recipe_id FROM reviews GROUP BY recipe_id ORDER BY COUNT(*) DESC, recipe_id LIMIT ?",
+                Long.class, hot);
+        if (recipeIds.isEmpty()) {
+            throw new IllegalStateException("No reviews in the database, import the data first");
+        }
+        // 依次调用得到的结果，并发调用应得到相同的结果
+        val expected = new HashMap<Integer, Object>();
+        val requests = new ArrayList<Integer>(calls);
+        for (int i = 0; i < calls; i++) {
+            int kind = i % 50 == 0 ? 2 : i % 2;
+            int request = kind * recipeIds.size() + i % recipeIds.size();
+            requests.add(request);
+            expected.computeIfAbsent(request, r -> readHot(r, recipeIds));
+        }
+        Collections.shuffle(requests);
+
+        val before = databaseService.getCounters();
+        val mismatches = new AtomicInteger();
+        val errors = new ConcurrentLinkedQueue<Throwable>();
+        long elapsed = runConcurrently(threads, requests, request -> {
+            try {
+                if (!expected.get(request).equals(readHot(request, recipeIds))) {
+                    mismatches.incrementAndGet();
+                }
+            } catch (RuntimeException e) {
+                errors.add(e);
+            }
+        });
+        for (val error : errors) {
+            log.error("read failed", error);
+        }
+
+        val report = new StringBuilder(String.format("%d calls from %d threads in %d ms: %d mismatches, %d errors",
+                calls, threads, elapsed, mismatches.get(), errors.size()));
+        val after = databaseService.getCounters();
+        if (!after.containsKey(COALESCED_COUNTER)) {
+            report.append(System.lineSeparator()).append("single-flight is disabled (sustc.service.single-flight)");
+        }
+        // 只报告本次调用的增量
+        after.forEach((name, value) -> report.append(System.lineSeparator())
+                .append(String.format("%-52s %8d", name, value - before.getOrDefault(name, 0L))));
+        return report.toString();
+    }
+
+    @ShellMethod(key = "stress mix", value = "Measure the throughput of a feed and search mix on platform or virtual threads")
+    public String stressMix(
+            @ShellOption(defaultValue = "64", help = "Number of concurrent callers") int workers,
+            @ShellOption(defaultValue = "20000", help = "Number of calls") int calls,
+            @ShellOption(value = "--feed-percent", defaultValue = "50", help = "Share of feed calls, the rest are searches") int feedPercent,
+            @ShellOption(defaultValue = "false", help = "Run each caller on a virtual thread (Java 21+)") boolean virtual,
+            @ShellOption(value = "--pool-size", defaultValue = "0", help = "Maximum connections, 0 keeps the configured pool") int poolSize,
+            @ShellOption(defaultValue = "0", help = "Number of callers running the global analytics meanwhile") int analytics) {
+        if (workers <= 0 || calls <= 0 || feedPercent < 0 || feedPercent > 100 || poolSize < 0 || analytics < 0) {
+            throw new IllegalArgumentException("Workers and calls must be positive, the feed share between 0 and 100");
+        }
+        // 只读的调用，参数取自现有数据：关注了他人的用户，食谱的分类和名称中的词
+        val followers = jdbcTemplate.queryForList("SELECT follower_id FROM user_follows uf JOIN users u ON u.id = uf.follower_id " +
+                "WHERE u.is_deleted = FALSE GROUP BY follower_id ORDER BY random() LIMIT 1000", Long.class);
+        val categories = jdbcTemplate.queryForList("SELECT DISTINCT category FROM recipes WHERE category IS NOT NULL", String.class);
+        val keywords = jdbcTemplate.queryForList("SELECT split_part(name, ' ', 1) FROM recipes " +
+                "WHERE is_deleted = FALSE ORDER BY random() LIMIT 1000", String.class);
+        if (followers.isEmpty() || categories.isEmpty() || keywords.isEmpty()) {
+            throw new IllegalStateException("No follows or recipes in the database, import the data first");
+        }
+        val sorts = new String[]{"rating_desc", "date_desc", "calories_asc", null};
+        val random = ThreadLocalRandom.current();
+        val requests = new ArrayList<Object[]>(calls);
+        for (int i = 0; i < calls; i++) {
+            String category = random.nextInt(3) == 0 ? categories.get(random.nextInt(categories.size())) : null;
+            if (random.nextInt(100) < feedPercent) {
+                requests.add(new Object[]{followers.get(random.nextInt(followers.size())), 1 + random.nextInt(3), category});
+            } else {
+                requests.add(new Object[]{keywords.get(random.nextInt(keywords.size())), category, sorts[random.nextInt(sorts.length)]});
+            }
+        }
+
+        // 虚拟线程不可用时直接失败，不用平台线程冒充
+        val workerPool = WorkerPools.newFixed(workers, virtual);
+        val previousPoolSize = WorkerPools.resizeConnectionPool(dataSource, poolSize);
+        try {
+            val latencies = new ConcurrentHistogram(3);
+            val errors = new AtomicInteger();
+            // 统计分析在后台守护线程上循环执行，不能中断正在执行的查询，结束时不等待
+            val analyticsCalls = new AtomicInteger();
+            val analyticsErrors = new AtomicInteger();
+            val stopped = new AtomicBoolean();
+            val analyticsExecutor = Executors.newFixedThreadPool(Math.max(analytics, 1), task -> {
+                Thread thread = new Thread(task, "analytics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (int i = 0; i < analytics; i++) {
+                analyticsExecutor.execute(() -> {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        try {
+                            readAnalytics();
+                            analyticsCalls.incrementAndGet();
+                        } catch (RuntimeException e) {
+                            // 结束时中断等待连接的调用，不算作错误
+                            if (!stopped.get() && analyticsErrors.getAndIncrement() == 0) {
+                                log.error("analytics failed", e);
+                            }
+                        }
+                    }
+                });
+            }
+            long cpuStart = processCpuTime();
+            long elapsed = runConcurrently(workerPool, workers, requests, request -> {
+                long start = System.nanoTime();
+                try {
+                    if (request[0] instanceof Long) {
+                        userService.feed(AuthInfo.builder().authorId((Long) request[0]).build(),
+                                (Integer) request[1], 10, (String) request[2]);
+                    } else {
+                        recipeService.searchRecipes((String) request[0], (String) request[1], null, 1, 10, (String) request[2]);
+                    }
+                } catch (RuntimeException e) {
+                    if (errors.getAndIncrement() == 0) {
+                        log.error("call failed", e);
+                    }
+                }
+                latencies.recordValue(System.nanoTime() - start);
+            });
+            long cpu = processCpuTime() - cpuStart;
+            String analyticsPool = poolState(analyticsDataSource);
+            stopped.set(true);
+            analyticsExecutor.shutdownNow();
+
+            return String.format("%d calls from %d %s threads, %s connections in %d ms: %.0f calls/s, " +
+                            "p50 %.2f ms, p99 %.2f ms, %.0f calls per CPU second, %d errors",
+                    calls, workers, virtual ? "virtual" : "platform",
+                    poolSize > 0 ? String.valueOf(poolSize) : "the configured", elapsed,
+                    calls * 1000.0 / Math.max(elapsed, 1),
+                    latencies.getValueAtPercentile(50) / 1e6, latencies.getValueAtPercentile(99) / 1e6,
+                    cpu > 0 ? calls * 1e9 / cpu : Double.NaN, errors.get())
+                    + (analytics > 0 ? String.format("%n%d analytics callers meanwhile: %d rounds done, %d errors, " +
+                    "analytics pool at the end: %s", analytics, analyticsCalls.get(), analyticsErrors.get(), analyticsPool) : "");
+        } finally {
+            WorkerPools.restoreConnectionPool(dataSource, previousPoolSize);
+        }
+    }
+
+    private static String poolState(DataSource dataSource) {
+        try {
+            if (!dataSource.isWrapperFor(HikariDataSource.class)) {
+                return "unknown";
+            }
+            val pool = dataSource.unwrap(HikariDataSource.class).getHikariPoolMXBean();
+            // 连接池在第一次取连接时才启动
+            if (pool == null) {
+                return "not started";
+            }
+            return String.format("%d active, %d waiting", pool.getActiveConnections(), pool.getThreadsAwaitingConnection());
+        } catch (SQLException e) {
+            return "unknown";
+        }
+    }
+
+    /**
+     * CPU time of the whole process in nanoseconds, or -1 if the JVM doesn't report it.
+     */
+    private static long processCpuTime() {
+        val os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    /**
+     * How much a counter of {@link DatabaseService#getCounters} grew since {@code before}.
+     */
+    private long counterDelta(Map<String, Long> before, String name) {
+        return databaseService.getCounters().getOrDefault(name, 0L) - before.getOrDefault(name, 0L);
+    }
+
+    @ShellMethod(key = "stress analytics", value = "Read the global analytics between writes that change them")
+    public String stressAnalytics(
+            @ShellOption(defaultValue = "20", help = "Number of writes") int rounds,
+            @ShellOption(defaultValue = "100", help = "Reads of each analytic after each write") int reads,
+            @ShellOption(defaultValue = "false", help = "Keep the written data") boolean keep) {
+        if (rounds <= 0 || reads <= 0) {
+            throw new IllegalArgumentException("Rounds and reads must be positive");
+        }
+        return withSnapshot(keep, () -> {
+            val problems = new ArrayList<String>();
+            val before = databaseService.getCounters();
+            long firstTime = 0;
+            long readTime = 0;
+            long freshTime = 0;
+            for (int round = 0; round < rounds; round++) {
+                String write = writeForAnalytics(round);
+                long start = System.nanoTime();
+                List<Object> first = readAnalytics();
+                firstTime += System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 1; i < reads; i++) {
+                    if (!first.equals(readAnalytics())) {
+                        problems.add("after " + write + ": the analytics changed without a write");
+                    }
+                }
+                readTime += System.nanoTime() - start;
+
+                // 使缓存失效后重新计算，与失效前读到的结果比较
+                databaseService.dataChanged();
+                start = System.nanoTime();
+                List<Object> fresh = readAnalytics();
+                freshTime += System.nanoTime() - start;
+                if (!fresh.equals(first)) {
+                    problems.add("after " + write + ": read " + first + ", recomputed " + fresh);
+                }
+            }
+
+            val summary = new StringBuilder(String.format(
+                    "%d writes, %d reads of the analytics after each: %.3f ms for the first read, %.3f ms for the others, " +
+                            "%.3f ms after invalidating, %d hits, %d misses",
+                    rounds, reads, firstTime / 1e6 / rounds, readTime / 1e6 / (rounds * Math.max(reads - 1, 1)),
+                    freshTime / 1e6 / rounds,
+                    counterDelta(before, HITS_COUNTER), counterDelta(before, MISSES_COUNTER)));
+            if (!databaseService.getCounters().containsKey(HITS_COUNTER)) {
+                summary.append(System.lineSeparator()).append("the cache is disabled (sustc.service.analytics-cache)");
+            }
+            return report(summary.toString(), problems);
+        });
+    }
+
+    @ShellMethod(key = "stress calories", value = "Compare the closest calorie pair with the SQL result across random writes")
+    public String stressCalories(
+            @ShellOption(defaultValue = "3", help = "Number of comparisons") int rounds,
+            @ShellOption(defaultValue = "20", help = "Recipes created or deleted before each comparison") int writes,
+            @ShellOption(defaultValue = "false", help = "Keep the written data") boolean keep) {
+        if (rounds <= 0 || writes <= 0) {
+            throw new IllegalArgumentException("Rounds and writes must be positive");
+        }
+        // 没有索引时服务执行的就是下面的参考查询，比较没有意义
+        if (!databaseService.getCounters().containsKey(CALORIE_INDEX_COUNTER)) {
+            return "the index is disabled (sustc.service.calorie-index), nothing was compared";
+        }
+        return withSnapshot(keep, () -> {
+            val problems = new ArrayList<String>();
+            val random = ThreadLocalRandom.current();
+            long serviceTime = 0;
+            long sqlTime = 0;
+            for (int round = 0; round <= rounds; round++) {
+                // 第 0 轮在写入前比较，之后每轮先删除当前最接近的一对中的一个，再随机创建和删除
+                if (round > 0) {
+                    val pair = recipeService.getClosestCaloriePair();
+                    if (pair != null) {
+                        deleteRecipe((Long) pair.get(random.nextBoolean() ? "RecipeA" : "RecipeB"));
+                    }
+                    for (int i = 1; i < writes; i++) {
+                        if (random.nextInt(5) < 3) {
+                            createRecipeNear(random);
+                        } else {
+                            deleteRecipe(jdbcTemplate.queryForObject(
+                                    "SELECT id FROM recipes WHERE is_deleted = FALSE ORDER BY random() LIMIT 1", Long.class));
+                        }
+                    }
+                }
+                long start = System.nanoTime();
+                val actual = recipeService.getClosestCaloriePair();
+                serviceTime += System.nanoTime() - start;
+                start = System.nanoTime();
+                val expected = queryClosestCaloriePair();
+                sqlTime += System.nanoTime() - start;
+                if (!Objects.equals(actual, expected)) {
+                    problems.add("round " + round + ": returned " + actual + ", expected " + expected);
+                }
+            }
+
+            return report(String.format(
+                    "%d comparisons, %d writes between them: %.3f ms per call, %.3f ms per SQL query",
+                    rounds + 1, writes, serviceTime / 1e6 / (rounds + 1), sqlTime / 1e6 / (rounds + 1)), problems);
+        });
+    }
+
+    /**
+     * Runs a check on the current data, which is restored afterwards unless asked to keep the changes.
+     */
+    private String withSnapshot(boolean keep, Supplier<String> check) {
+        if (!keep) {
+            databaseSnapshot.take();
+        }
+        try {
+            return check.get();
+        } finally {
+            if (!keep) {
+                databaseSnapshot.restore();
+                databaseSnapshot.discard();
+            }
+        }
+    }
+
+    /**
+     * The summary of a check, followed by the problems it found or by OK.
+     */
+    private static String report(String summary, List<String> problems) {
+        return summary + System.lineSeparator()
+                + (problems.isEmpty() ? "OK" : String.join(System.lineSeparator(), problems));
+    }
+
+    /**
+     * Creates a recipe with the calories of a random recipe, or within 1 of them, so that it often
+     * becomes part of the closest pair.
+     */
+    private void createRecipeNear(ThreadLocalRandom random) {
+        val recipe = jdbcTemplate.queryForMap("SELECT author_id, calories FROM recipes " +
+                "WHERE is_deleted = FALSE AND calories IS NOT NULL ORDER BY random() LIMIT 1");
+        float calories = ((Number) recipe.get("calories")).floatValue();
+        if (random.nextBoolean()) {
+            calories += (float) random.nextDouble(-1, 1);
+        }
+        recipeService.createRecipe(RecipeRecord.builder()
+                .name("stress recipe")
+                .calories(Math.max(calories, 0))
+                .build(), AuthInfo.builder().authorId((Long) recipe.get("author_id")).build());
+    }
+
+    private void deleteRecipe(long recipeId) {
+        long authorId = jdbcTemplate.queryForObject("SELECT author_id FROM recipes WHERE id = ?", Long.class, recipeId);
+        recipeService.deleteRecipe(recipeId, AuthInfo.builder().authorId(authorId).build());
+    }
+
+    /**
+     * The query {@code getClosestCaloriePair} runs without the index, comparing every pair of recipes.
+     */
+    private Map<String, Object> queryClosestCaloriePair() {
+        val pairs = analyticsJdbcTemplate.query("SELECT r1.id AS id1, r2.id AS id2, " +
+                        "ROUND(CAST(r1.calories AS NUMERIC), 2) AS cal1, ROUND(CAST(r2.calories AS NUMERIC), 2) AS cal2, " +
+                        "ABS(ROUND(CAST(r1.calories AS NUMERIC), 2) - ROUND(CAST(r2.calories AS NUMERIC), 2)) AS diff " +
+                        "FROM recipes r1 JOIN recipes r2 ON r1.id < r2.id " +
+                        "WHERE r1.is_deleted = FALSE AND r2.is_deleted = FALSE " +
+                        "AND r1.calories IS NOT NULL AND r2.calories IS NOT NULL " +
+                        "ORDER BY diff ASC, r1.id ASC, r2.id ASC LIMIT 1",
+                (rs, rowNum) -> {
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    map.put("RecipeA", rs.getLong("id1"));
+                    map.put("RecipeB", rs.getLong("id2"));
+                    map.put("CaloriesA", roundTo1(rs.getDouble("cal1")));
+                    map.put("CaloriesB", roundTo1(rs.getDouble("cal2")));
+                    map.put("Difference", roundTo1(rs.getDouble("diff")));
+                    return map;
+                });
+        return pairs.isEmpty() ? null : pairs.get(0);
+    }
+
+    private static double roundTo1(double value) {
+        return BigDecimal.valueOf(value).setScale(1, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    private List<Object> readAnalytics() {
+        val result = new ArrayList<Object>();
+        result.add(recipeService.getClosestCaloriePair());
+        result.add(recipeService.getTop3MostComplexRecipesByIngredients());
+        result.add(userService.getUserWithHighestFollowRatio());
+        return result;
+    }
+
+    /**
+     * Makes one of the writes the analytics depend on, in turn: a recipe with the calories of
+     * another one and many ingredients, the deletion of that recipe, a follow of the user with the
+     * highest follow ratio, and the deletion of that user's account.
+     */
+    private String writeForAnalytics(int round) {
+        long userId = jdbcTemplate.queryForObject(
+                "SELECT id FROM users WHERE is_deleted = FALSE ORDER BY random() LIMIT 1", Long.class);
+        AuthInfo auth = AuthInfo.builder().authorId(userId).build();
+        switch (round % 4) {
+            case 0: {
+                Float calories = jdbcTemplate.queryForObject(
+                        "SELECT calories FROM recipes WHERE is_deleted = FALSE AND calories IS NOT NULL " +
+                                "ORDER BY random() LIMIT 1", Float.class);
+                String[] parts = new String[50 + round];
+                for (int i = 0; i < parts.length; i++) {
+                    parts[i] = "stress ingredient " + i;
+                }
+                long recipeId = recipeService.createRecipe(RecipeRecord.builder()
+                        .name("stress recipe " + round)
+                        .calories(calories == null ? 0 : calories)
+                        .recipeIngredientParts(parts)
+                        .build(), auth);
+                return "createRecipe " + recipeId;
+            }
+            case 1: {
+                Long recipeId = jdbcTemplate.queryForObject(
+                        "SELECT MAX(id) FROM recipes WHERE is_deleted = FALSE", Long.class);
+                long authorId = jdbcTemplate.queryForObject(
+                        "SELECT author_id FROM recipes WHERE id = ?", Long.class, recipeId);
+                recipeService.deleteRecipe(recipeId, AuthInfo.builder().authorId(authorId).build());
+                return "deleteRecipe " + recipeId;
+            }
+            case 2: {
+                val top = userService.getUserWithHighestFollowRatio();
+                long followeeId = top == null ? userId : (Long) top.get("AuthorId");
+                if (followeeId == userId) {
+                    return "no follow";
+                }
+                userService.follow(auth, followeeId);
+                return "follow " + userId + " -> " + followeeId;
+            }
+            default: {
+                val top = userService.getUserWithHighestFollowRatio();
+                long deletedId = top == null ? userId : (Long) top.get("AuthorId");
+                userService.deleteAccount(AuthInfo.builder().authorId(deletedId).build(), deletedId);
+                return "deleteAccount " + deletedId;
+            }
+        }
+    }
+
+    /**
+     * Request {@code kind * hot + i}: kind 0 reads the i-th hot recipe, kind 1 its first review page
+     * by likes, kind 2 the user with the highest follow ratio.
+     */
+    private Object readHot(int request, List<Long> recipeIds) {
+        long recipeId = recipeIds.get(request % recipeIds.size());
+        switch (request / recipeIds.size()) {
+            case 0:
+                return recipeService.getRecipeById(recipeId);
+            case 1:
+                return reviewService.listByRecipe(recipeId, 1, 10, "likes_desc");
+            default:
+                return userService.getUserWithHighestFollowRatio();
+        }
+    }
+
+    /**
+     * Checks a like count returned while the likes change concurrently: it lies between the counts
+     * before and after all the changes.
+     */
+    private static void checkLikeCount(List<String> problems, Queue<Throwable> errors, int min, int max,
+                                       LongSupplier call) {
+        try {
+            long count = call.getAsLong();
+            if (count < Math.min(min, max) || count > Math.max(min, max)) {
+                synchronized (problems) {
+                    problems.add("returned a count of " + count + ", outside [" + min + ", " + max + "]");
+                }
+            }
+        } catch (RuntimeException e) {
+            errors.add(e);
+        }
+    }
+
+    private void checkStoredLikes(List<String> problems, long reviewId, Set<Long> expected, String when) {
+        val stored = new HashSet<Long>(jdbcTemplate.queryForList(
+                "SELECT user_id FROM review_likes WHERE review_id = ?", Long.class, reviewId));
+        if (!stored.equals(expected)) {
+            problems.add(stored.size() + " likes are stored " + when + ", expected " + expected.size());
+        }
+    }
+
+    private static <T> List<T> repeat(List<T> items, int times) {
+        val result = new ArrayList<T>(items.size() * times);
+        for (int i = 0; i < times; i++) {
+            result.addAll(items);
+        }
+        Collections.shuffle(result);
+        return result;
+    }
+
+    private boolean isFollowing(long followerId, long followeeId) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM user_follows WHERE follower_id = ? AND followee_id = ?)",
+                Boolean.class, followerId, followeeId));
+    }
+
+    /**
+     * Applies the body to every item from a fixed pool of threads, which all start at the same time.
+     *
+     * @return the elapsed milliseconds
+     */
+    private static <T> long runConcurrently(int threads, List<T> items, Consumer<T> body) {
+        return runConcurrently(Executors.newFixedThreadPool(threads), threads, items, body);
+    }
+
+    /**
+     * Applies the body to every item from the given number of workers on the executor, which all start
+     * at the same time. The executor is shut down afterwards.
+     *
+     * @return the elapsed milliseconds
+     */
+    private static <T> long runConcurrently(ExecutorService executor, int threads, List<T> items, Consumer<T> body) {
+        val start = new CountDownLatch(1);
+        val cursor = new AtomicInteger();
+        val workers = new ArrayList<Future<?>>(threads);
+        try {
+            for (int w = 0; w < threads; w++) {
+                workers.add(executor.submit(() -> {
+                    start.await();
+                    int i;
+                    while ((i = cursor.getAndIncrement()) < items.size()) {
+                        body.accept(items.get(i));
+                    }
+                    return null;
+                }));
+            }
+            long startTime = System.currentTimeMillis();
+            start.countDown();
+            for (val worker : workers) {
+                worker.get();
+            }
+            return System.currentTimeMillis() - startTime;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Worker failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
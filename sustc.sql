@@ -12,8 +12,9 @@ DROP TABLE IF EXISTS users CASCADE;
 -- Source: users.csv
 -- ==========================================
 CREATE TABLE users (
-    id BIGINT PRIMARY KEY,                 -- Imported AuthorId
-    name VARCHAR(255) UNIQUE NOT NULL,     -- Imported AuthorName (Must be unique per Req)
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, -- Imported AuthorId, generated on register
+    name VARCHAR(255) NOT NULL,            -- Imported AuthorName (Must be unique per Req)
+    name_rank INT NOT NULL DEFAULT 0,      -- n - 1 for the n-th imported user of a name, 0 when registered
     password VARCHAR(255),                 -- To be hashed in Service layer
     gender VARCHAR(50),                    -- 'Male', 'Female', 'Unknown'
     age INT,
@@ -23,6 +24,10 @@ CREATE TABLE users (
     is_deleted BOOLEAN DEFAULT FALSE       -- Soft Delete Flag
 );
 
+-- The imported data has users with the same name, so names are unique together with their rank:
+-- a registration (rank 0) fails once the name exists.
+CREATE UNIQUE INDEX idx_users_name ON users(name, name_rank);
+
 -- ==========================================
 -- 2. Recipes Table
 -- Source: recipes.csv
@@ -148,3 +153,6 @@ CREATE INDEX idx_follows_followee ON user_follows(followee_id);
 
 -- 5. Optimize Review Retrieval
 CREATE INDEX idx_likes_review ON review_likes(review_id);
+
+-- After importing users with their ids, registrations continue after the largest one
+SELECT setval(pg_get_serial_sequence('users', 'id'), COALESCE(MAX(id), 0) + 1, false) FROM users;